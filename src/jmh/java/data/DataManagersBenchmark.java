@@ -0,0 +1,86 @@
+package data;
+
+import data.airlines.AirlinesManager;
+import data.airlines.Flight;
+import data.hotels.Hotel;
+import data.hotels.HotelsManager;
+import data.users.HotelReservation;
+import data.users.UsersManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single call on each data manager, against a temporary copy of the databases.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataManagersBenchmark {
+
+  private static final int USER_ID = 1;
+
+  @Param({"Berlin"})
+  public String destination;
+
+  private TemporaryDatabases databases;
+  private AirlinesManager airlinesManager;
+  private HotelsManager hotelsManager;
+  private UsersManager usersManager;
+  private int nextHotelId;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    databases = new TemporaryDatabases(Paths.get(System.getProperty("benchmark.sourceDir", "")));
+    airlinesManager = new AirlinesManager();
+    hotelsManager = new HotelsManager();
+    usersManager = new UsersManager();
+  }
+
+  /**
+   * Empties the reservations made by {@link #reserveHotel()}, so that every iteration inserts into the same table.
+   */
+  @TearDown(Level.Iteration)
+  public void deleteReservations() throws SQLException {
+    try (Connection connection = DriverManager.getConnection(Database.USERS.getUrl());
+         Statement statement = connection.createStatement()) {
+      statement.executeUpdate("DELETE FROM hotel_reservations");
+    }
+    nextHotelId = 0;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    airlinesManager.close();
+    hotelsManager.close();
+    usersManager.close();
+    databases.delete();
+  }
+
+  @Benchmark
+  public List<Flight> getFlights() {
+    return airlinesManager.getFlights(destination);
+  }
+
+  @Benchmark
+  public List<Hotel> getHotels() {
+    return hotelsManager.getHotels(destination);
+  }
+
+  @Benchmark
+  public void reserveHotel() throws OperationException {
+    // hotel_id is the primary key of the reservations, so every call reserves a different hotel
+    usersManager.reserveHotel(new HotelReservation(USER_ID, nextHotelId++, new Timestamp(100), new Timestamp(200), 1));
+  }
+}
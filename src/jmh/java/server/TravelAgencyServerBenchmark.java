@@ -0,0 +1,91 @@
+package server;
+
+import data.TemporaryDatabases;
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.openjdk.jmh.annotations.*;
+import transactionmanager.TransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Round trip of one transaction through the server over an in-process channel, so that the time is spent in the
+ * gRPC stack and the transaction manager rather than on the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TravelAgencyServerBenchmark {
+
+  private static final String SERVER_NAME = "travel-agency-benchmark";
+
+  private TemporaryDatabases databases;
+  private TransactionManager transactionManager;
+  private TravelAgencyServer server;
+  private ManagedChannel channel;
+  private TransactionHandlerGrpc.TransactionHandlerBlockingStub stub;
+  private final AtomicLong transactionIds = new AtomicLong();
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    databases = new TemporaryDatabases(Paths.get(System.getProperty("benchmark.sourceDir", "")));
+    transactionManager = new TransactionManager();
+    server = new TravelAgencyServer(transactionManager);
+    server.start(InProcessServerBuilder.forName(SERVER_NAME));
+    channel = InProcessChannelBuilder.forName(SERVER_NAME).build();
+    stub = TransactionHandlerGrpc.newBlockingStub(channel);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException, InterruptedException {
+    channel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+    server.stop();
+    transactionManager.shutdown();
+    databases.delete();
+  }
+
+  /**
+   * A read-only search, which runs on a snapshot without taking any lock.
+   */
+  @Benchmark
+  public TransactionReply searchFlights() {
+    return stub.sendTransaction(request(transactionIds.incrementAndGet(),
+        Operation.newBuilder().setType(OperationType.READ).setTable(Table.FLIGHTS)
+            .setSearch(Search.newBuilder().setDestination("Berlin"))));
+  }
+
+  /**
+   * A hotel reservation, cancelled again in the same transaction, which goes through locking and the commit.
+   */
+  @Benchmark
+  public TransactionReply reserveHotel() {
+    long id = transactionIds.incrementAndGet();
+    HotelReservationRow reservation = HotelReservationRow.newBuilder()
+        .setUserId(1)
+        .setHotelId(1000 + (int) (id % 1_000_000))
+        .setArrival(100)
+        .setDeparture(200)
+        .setNoRooms(1)
+        .build();
+    return stub.sendTransaction(request(id,
+        Operation.newBuilder().setType(OperationType.WRITE).setTable(Table.HOTEL_RESERVATIONS)
+            .setHotelReservation(reservation),
+        Operation.newBuilder().setType(OperationType.DELETE).setTable(Table.HOTEL_RESERVATIONS)
+            .setHotelReservation(reservation)));
+  }
+
+  private TransactionRequest request(long id, Operation.Builder... operations) {
+    Transaction.Builder transaction = Transaction.newBuilder().setId("b" + id);
+    for (Operation.Builder operation : operations) {
+      transaction.addOperations(operation);
+    }
+    return TransactionRequest.newBuilder().addTransaction(transaction).build();
+  }
+}
@@ -0,0 +1,119 @@
+package transactionmanager;
+
+import data.TemporaryDatabases;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.*;
+import server.FlightRow;
+import server.HotelReservationRow;
+import server.Operation;
+import server.OperationType;
+import server.Table;
+import server.Transaction;
+import server.TransactionReply;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transaction throughput of the transaction manager, with the given share of the transactions all reserving the same
+ * hotel and the others each reserving a hotel of their own. Every transaction reserves its hotel and cancels the
+ * reservation again, so the tables stay the same size. The given share of the transactions also adds and removes a
+ * flight of a route of their own, which makes them commit in two phases across the users and airlines databases.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TransactionManagerBenchmark {
+
+  private static final int TRANSACTIONS_PER_INVOCATION = 100;
+  private static final int HOT_HOTEL_ID = 1;
+  private static final int USER_ID = 1;
+  private static final int FLIGHT_ROUTE_ID = 1_000_000;
+
+  @Param({"0", "0.1", "0.5", "1"})
+  public double conflictRate;
+
+  @Param({"locking", "timestamp"})
+  public String concurrency;
+
+  @Param({"0", "0.1"})
+  public double distributedRate;
+
+  private TemporaryDatabases databases;
+  private TransactionManager transactionManager;
+  private final AtomicLong transactionIds = new AtomicLong();
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    databases = new TemporaryDatabases(Paths.get(System.getProperty("benchmark.sourceDir", "")));
+    System.setProperty(ConcurrencyControl.MODE_PROPERTY, concurrency);
+    transactionManager = new TransactionManager();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException, InterruptedException {
+    transactionManager.shutdown();
+    databases.delete();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TRANSACTIONS_PER_INVOCATION)
+  public void runTransactions() throws InterruptedException {
+    CountDownLatch replies = new CountDownLatch(TRANSACTIONS_PER_INVOCATION);
+    StreamObserver<TransactionReply> observer = new StreamObserver<TransactionReply>() {
+      @Override
+      public void onNext(TransactionReply reply) {
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        replies.countDown();
+      }
+
+      @Override
+      public void onCompleted() {
+        replies.countDown();
+      }
+    };
+    for (int i = 0; i < TRANSACTIONS_PER_INVOCATION; i++) {
+      transactionManager.addTransaction(nextTransaction(), observer);
+    }
+    replies.await();
+  }
+
+  private Transaction nextTransaction() {
+    long id = transactionIds.incrementAndGet();
+    boolean conflicting = ThreadLocalRandom.current().nextDouble() < conflictRate;
+    HotelReservationRow reservation = HotelReservationRow.newBuilder()
+        .setUserId(USER_ID)
+        .setHotelId(conflicting ? HOT_HOTEL_ID : HOT_HOTEL_ID + (int) (id % 1_000_000) + 1)
+        .setArrival(100)
+        .setDeparture(200)
+        .setNoRooms(1)
+        .build();
+    Transaction.Builder transaction = Transaction.newBuilder()
+        .setId("b" + id)
+        .addOperations(Operation.newBuilder().setType(OperationType.WRITE).setTable(Table.HOTEL_RESERVATIONS)
+            .setHotelReservation(reservation))
+        .addOperations(Operation.newBuilder().setType(OperationType.DELETE).setTable(Table.HOTEL_RESERVATIONS)
+            .setHotelReservation(reservation));
+    if (ThreadLocalRandom.current().nextDouble() < distributedRate) {
+      FlightRow flight = FlightRow.newBuilder()
+          .setRouteId(FLIGHT_ROUTE_ID + (int) (id % 1_000_000))
+          .setDeparture(100)
+          .setArrival(200)
+          .build();
+      transaction
+          .addOperations(Operation.newBuilder().setType(OperationType.WRITE).setTable(Table.FLIGHTS).setFlight(flight))
+          .addOperations(Operation.newBuilder().setType(OperationType.DELETE).setTable(Table.FLIGHTS).setFlight(flight));
+    }
+    return transaction.build();
+  }
+}
@@ -0,0 +1,234 @@
+package client;
+
+import server.Operation;
+import server.OperationParameters;
+import server.Operations;
+import server.Transaction;
+import server.Variable;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Streams the transactions of a transaction file. A parser thread reads ahead at most a fixed number of transactions,
+ * so the first ones can be sent while the rest of the file is still being read and the heap never holds more than the
+ * read-ahead, however large the file. The file is read either through a buffered reader or, for large files, by
+ * mapping it into memory one region at a time.
+ * <p>
+ * The file starts with the number of transactions. Each transaction starts with a line holding its number of
+ * operations and its id, followed by one line per operation: the instruction, the table and the parameters.
+ */
+public class TransactionFileReader implements Iterator<Transaction>, Closeable {
+
+  public static final int DEFAULT_READ_AHEAD = 1024;
+  private static final long MAPPED_REGION_SIZE = 64L * 1024 * 1024;
+  private static final Object END = new Object();
+
+  private final LineSource lines;
+  private final BlockingQueue<Object> readAhead;
+  private final Thread parser;
+  private Object next;
+
+  public TransactionFileReader(Path file, boolean mapped, int readAhead) throws IOException {
+    this.lines = mapped ? new MappedLineSource(file) : new BufferedLineSource(file);
+    this.readAhead = new ArrayBlockingQueue<>(readAhead);
+    this.parser = new Thread(this::parse, "transaction-file-parser");
+    parser.setDaemon(true);
+    parser.start();
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next == null) {
+      try {
+        next = readAhead.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while reading transactions", e);
+      }
+    }
+    if (next instanceof RuntimeException) {
+      throw (RuntimeException) next;
+    }
+    return next != END;
+  }
+
+  @Override
+  public Transaction next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Transaction transaction = (Transaction) next;
+    next = null;
+    return transaction;
+  }
+
+  @Override
+  public void close() throws IOException {
+    parser.interrupt();
+    lines.close();
+  }
+
+  private void parse() {
+    try {
+      String line = lines.readLine();
+      int noTransactions = line == null ? 0 : Integer.parseInt(line.trim());
+      for (int noTransaction = 0; noTransaction < noTransactions; noTransaction++) {
+        Transaction transaction = parseTransaction();
+        if (transaction == null) {
+          break;
+        }
+        readAhead.put(transaction);
+      }
+      readAhead.put(END);
+    } catch (InterruptedException e) {
+      // Closed before the end of the file
+    } catch (IOException | RuntimeException e) {
+      try {
+        readAhead.put(e instanceof RuntimeException ? e : new UncheckedIOException((IOException) e));
+      } catch (InterruptedException interrupted) {
+        // Closed before the failure was seen
+      }
+    }
+  }
+
+  private Transaction parseTransaction() throws IOException {
+    String header = lines.readLine();
+    if (header == null) {
+      return null;
+    }
+    int separator = header.indexOf(' ');
+    int noInstructions = Integer.parseInt(header.substring(0, separator));
+    String transactionId = header.substring(separator + 1).trim();
+
+    Set<Variable> readSet = new HashSet<>();
+    Set<Variable> writeSet = new HashSet<>();
+    Transaction.Builder builder = Transaction.newBuilder().setId(transactionId);
+    for (int noInstruction = 0; noInstruction < noInstructions; noInstruction++) {
+      String line = lines.readLine();
+      if (line == null) {
+        throw new EOFException("Transaction " + transactionId + " is missing operations");
+      }
+      String[] lineElements = line.split(" ");
+      String instruction = lineElements[0];
+      Variable variable = Variable.newBuilder().setId(lineElements[1]).build();
+
+      OperationParameters.Builder parameters = OperationParameters.newBuilder();
+      for (int parameterIndex = 2; parameterIndex < lineElements.length; parameterIndex++) {
+        parameters.addParameters(lineElements[parameterIndex]);
+      }
+      Operation operation = Operation.newBuilder().setInstruction(instruction).setVariable(variable).
+          setParameters(parameters).build();
+
+      if (instruction.equals("W") || instruction.equals("D")) {
+        writeSet.add(variable);
+      } else if (instruction.equals("R")) {
+        readSet.add(variable);
+      }
+      builder.addOperations(typed(operation));
+    }
+    return builder.addAllReadSet(readSet).addAllWriteSet(writeSet).build();
+  }
+
+  /**
+   * Sends the operation typed, which the server does not have to parse. A malformed operation is sent as it is and
+   * fails its transaction on the server.
+   */
+  private static Operation typed(Operation operation) {
+    try {
+      return Operations.typed(operation);
+    } catch (IllegalArgumentException e) {
+      return operation;
+    }
+  }
+
+  private interface LineSource extends Closeable {
+    /**
+     * Returns the next line without its line terminator, or null at the end of the file.
+     */
+    String readLine() throws IOException;
+  }
+
+  private static class BufferedLineSource implements LineSource {
+    private final BufferedReader reader;
+
+    private BufferedLineSource(Path file) throws IOException {
+      this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String readLine() throws IOException {
+      return reader.readLine();
+    }
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+  }
+
+  /**
+   * Reads lines straight from the page cache. Only one region of the file is mapped at a time, since a mapping cannot
+   * be larger than 2GB.
+   */
+  private static class MappedLineSource implements LineSource {
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private byte[] line = new byte[256];
+
+    private MappedLineSource(Path file) throws IOException {
+      this.channel = FileChannel.open(file, StandardOpenOption.READ);
+      this.size = channel.size();
+      map(0);
+    }
+
+    private void map(long start) throws IOException {
+      regionStart = start;
+      region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAPPED_REGION_SIZE, size - start));
+    }
+
+    @Override
+    public String readLine() throws IOException {
+      int length = 0;
+      while (true) {
+        if (!region.hasRemaining()) {
+          long end = regionStart + region.limit();
+          if (end >= size) {
+            return length == 0 ? null : decode(length);
+          }
+          map(end);
+        }
+        byte b = region.get();
+        if (b == '\n') {
+          return decode(length);
+        }
+        if (length == line.length) {
+          line = Arrays.copyOf(line, line.length * 2);
+        }
+        line[length++] = b;
+      }
+    }
+
+    private String decode(int length) {
+      if (length > 0 && line[length - 1] == '\r') {
+        length--;
+      }
+      return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+}
@@ -1,20 +1,24 @@
 package client;
 
+import com.google.protobuf.TextFormat;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
 import server.*;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,19 +27,23 @@ public class TravelAgencyClient {
 
   private final ManagedChannel channel;
   private final TransactionHandlerGrpc.TransactionHandlerBlockingStub blockingStub;
-  private final List<Transaction> transactions;
-  private static final ExecutorService executor = Executors.newFixedThreadPool(5);
+  private final TransactionHandlerGrpc.TransactionHandlerStub asyncStub;
+  private final Iterator<Transaction> transactions;
+  private static final int SENDERS = 5;
+  private static final ExecutorService executor = Executors.newFixedThreadPool(SENDERS);
+  private static final int DEFAULT_MAX_OUTSTANDING = 100;
 
 
-  private TravelAgencyClient(String host, int port, List<Transaction> transactions) {
+  private TravelAgencyClient(String host, int port, Iterator<Transaction> transactions) {
     this(ManagedChannelBuilder.forAddress(host, port)
         .usePlaintext(true)
         .build(), transactions);
   }
 
-  private TravelAgencyClient(ManagedChannel channel, List<Transaction> transactions) {
+  TravelAgencyClient(ManagedChannel channel, Iterator<Transaction> transactions) {
     this.channel = channel;
     this.blockingStub = TransactionHandlerGrpc.newBlockingStub(channel);
+    this.asyncStub = TransactionHandlerGrpc.newStub(channel);
     this.transactions = transactions;
   }
 
@@ -43,10 +51,174 @@ public class TravelAgencyClient {
     channel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
   }
 
-  private void sendTransactions() {
-    for (Transaction transaction : transactions) {
-      executor.submit(() -> sendTransaction(transaction));
+  /**
+   * Sends the transactions as they are read, only reading the next one once a sender is free.
+   */
+  private void sendTransactions() throws InterruptedException {
+    Semaphore senders = new Semaphore(SENDERS);
+    while (transactions.hasNext()) {
+      Transaction transaction = transactions.next();
+      senders.acquire();
+      executor.submit(() -> {
+        try {
+          sendTransaction(transaction);
+        } finally {
+          senders.release();
+        }
+      });
+    }
+  }
+
+  /**
+   * Sends the transactions in batches of the given size, one RPC per batch, and logs the replies as they stream back.
+   */
+  private void sendTransactionBatches(int batchSize) throws InterruptedException {
+    Semaphore senders = new Semaphore(SENDERS);
+    while (transactions.hasNext()) {
+      List<Transaction> batch = new ArrayList<>(batchSize);
+      while (batch.size() < batchSize && transactions.hasNext()) {
+        batch.add(transactions.next());
+      }
+      senders.acquire();
+      executor.submit(() -> {
+        try {
+          sendTransactionBatch(batch);
+        } finally {
+          senders.release();
+        }
+      });
+    }
+  }
+
+  private void sendTransactionBatch(List<Transaction> batch) {
+    logger.info("Will try to send a batch of " + batch.size() + " transactions ...");
+    TransactionRequest request = TransactionRequest.newBuilder().addAllTransaction(batch).build();
+    try {
+      Iterator<TransactionReply> replies = blockingStub.sendTransactions(request);
+      while (replies.hasNext()) {
+        TransactionReply reply = replies.next();
+        logger.info("Reply for transaction " + reply.getTransactionId() + ": " + format(reply));
+      }
+    } catch (StatusRuntimeException e) {
+      logger.log(Level.WARNING, "RPC failed: {0}", e.getStatus());
+    }
+  }
+
+  /**
+   * Pipelines all the transactions over a single stream and logs the replies as they come back, in any order. At most
+   * the given number of transactions are sent ahead of their replies, so neither side buffers the whole file.
+   */
+  private void streamTransactions(int maxOutstanding) throws InterruptedException {
+    Semaphore outstanding = new Semaphore(maxOutstanding);
+    CountDownLatch finished = new CountDownLatch(1);
+    StreamObserver<Transaction> requestObserver = asyncStub.streamTransactions(new StreamObserver<TransactionReply>() {
+      @Override
+      public void onNext(TransactionReply reply) {
+        outstanding.release();
+        logger.info("Reply for transaction " + reply.getTransactionId() + ": " + format(reply));
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        logger.log(Level.WARNING, "RPC failed: {0}", Status.fromThrowable(t));
+        finished.countDown();
+        // Unblocks the sending loop, whose transactions are lost anyway
+        outstanding.release(Integer.MAX_VALUE / 2);
+      }
+
+      @Override
+      public void onCompleted() {
+        finished.countDown();
+      }
+    });
+
+    logger.info("Will try to stream transactions, at most " + maxOutstanding + " outstanding ...");
+    while (transactions.hasNext() && finished.getCount() > 0) {
+      Transaction transaction = transactions.next();
+      outstanding.acquire();
+      requestObserver.onNext(transaction);
+    }
+    requestObserver.onCompleted();
+    finished.await();
+  }
+
+  /**
+   * Sends every transaction without blocking, keeping at most the given number of them outstanding, then reports the
+   * throughput and latency percentiles. Transactions that were rejected or whose RPC failed count as failed.
+   *
+   * @return the number of failed transactions
+   */
+  int sendTransactionsAsync(int maxOutstanding) throws InterruptedException {
+    Semaphore outstanding = new Semaphore(maxOutstanding);
+    LatencyHistogram latencies = new LatencyHistogram();
+    AtomicInteger failures = new AtomicInteger();
+    int sentTransactions = 0;
+
+    logger.info("Will try to send transactions, at most " + maxOutstanding + " outstanding ...");
+    long start = System.nanoTime();
+    while (transactions.hasNext()) {
+      Transaction transaction = transactions.next();
+      outstanding.acquire();
+      sentTransactions++;
+      long sent = System.nanoTime();
+      TransactionRequest request = TransactionRequest.newBuilder().addTransaction(transaction).build();
+      asyncStub.sendTransaction(request, new StreamObserver<TransactionReply>() {
+        @Override
+        public void onNext(TransactionReply reply) {
+          latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sent));
+          if (!reply.getSuccess()) {
+            failures.incrementAndGet();
+          }
+          logger.fine("Reply for transaction " + transaction.getId() + ": " + format(reply));
+        }
+
+        @Override
+        public void onError(Throwable t) {
+          failures.incrementAndGet();
+          logger.log(Level.FINE, "RPC failed: {0}", Status.fromThrowable(t));
+          outstanding.release();
+        }
+
+        @Override
+        public void onCompleted() {
+          outstanding.release();
+        }
+      });
+    }
+    // All permits are back once every reply arrived
+    outstanding.acquire(maxOutstanding);
+    long elapsed = System.nanoTime() - start;
+
+    System.out.println(String.format("Sent %d transactions in %d ms: %.1f transactions/s, %d failed",
+        sentTransactions, TimeUnit.NANOSECONDS.toMillis(elapsed),
+        sentTransactions / (elapsed / 1e9), failures.get()));
+    System.out.println(String.format("Latency (ms): mean=%.3f p50=%.3f p99=%.3f p999=%.3f max=%.3f",
+        latencies.getMean() / 1000, latencies.getValueAtPercentile(50) / 1000.0,
+        latencies.getValueAtPercentile(99) / 1000.0, latencies.getValueAtPercentile(99.9) / 1000.0,
+        latencies.getMax() / 1000.0));
+    return failures.get();
+  }
+
+  /**
+   * Reads a whole table page by page and prints its rows as they arrive.
+   */
+  private void readTable(Table table, int pageSize) {
+    logger.info("Will try to read " + table + " in pages of " + pageSize + " rows ...");
+    ReadRequest request = ReadRequest.newBuilder().setTable(table).setPageSize(pageSize).build();
+    int pages = 0;
+    int rows = 0;
+    try {
+      Iterator<ReadReply> replies = blockingStub.readTable(request);
+      while (replies.hasNext()) {
+        ReadReply reply = replies.next();
+        pages++;
+        rows += Records.size(reply.getResult());
+        System.out.println(TextFormat.shortDebugString(reply.getResult()));
+      }
+    } catch (StatusRuntimeException e) {
+      logger.log(Level.WARNING, "RPC failed: {0}", e.getStatus());
     }
+    logger.info("Read " + rows + " rows of " + table + " in " + pages + " pages");
   }
 
   private void sendTransaction(Transaction transaction) {
@@ -59,16 +231,67 @@ public class TravelAgencyClient {
       logger.log(Level.WARNING, "RPC failed: {0}", e.getStatus());
       return;
     }
-    logger.info("Reply for transaction " + transaction.getId() + ": " + response.getMessage());
+    logger.info("Reply for transaction " + transaction.getId() + ": " + format(response));
+  }
+
+  /**
+   * The message of the reply followed by the records read, one result per line.
+   */
+  private static String format(TransactionReply reply) {
+    StringBuilder text = new StringBuilder(reply.getMessage());
+    for (ReadResult result : reply.getResultsList()) {
+      text.append("\n").append(TextFormat.shortDebugString(result));
+    }
+    for (TransactionReply transactionReply : reply.getRepliesList()) {
+      text.append("\n").append(transactionReply.getTransactionId()).append(": ").append(format(transactionReply));
+    }
+    return text.toString();
   }
 
+  /**
+   * Usage: {@code TravelAgencyClient <transaction file> [async [max outstanding] | stream [max outstanding] | <batch size>]}.
+   * The file is streamed through a buffered reader, or mapped into memory with {@code -Dclient.mappedFile=true}; the
+   * number of transactions read ahead is set with {@code -Dclient.readAhead}.
+   * <p>
+   * {@code TravelAgencyClient read <flights | hotels | users> [page size]} prints a whole table instead.
+   */
   public static void main(String[] args) {
 
-    List<Transaction> transactions = readTransactionsFromFile(args[0]);
+    if (args.length > 1 && args[0].equals("read")) {
+      TravelAgencyClient client = new TravelAgencyClient("localhost", 50051, null);
+      try {
+        client.readTable(Table.valueOf(args[1].toUpperCase()), args.length > 2 ? Integer.parseInt(args[2]) : 0);
+        client.shutdown();
+      } catch (InterruptedException e) {
+        System.err.println(e.getMessage());
+      }
+      return;
+    }
+
+    TransactionFileReader transactions;
+    try {
+      transactions = new TransactionFileReader(Paths.get(args[0]), Boolean.getBoolean("client.mappedFile"),
+          Integer.getInteger("client.readAhead", TransactionFileReader.DEFAULT_READ_AHEAD));
+    } catch (IOException e) {
+      System.err.println(e.getMessage());
+      return;
+    }
 
     int port = 50051;
     TravelAgencyClient client = new TravelAgencyClient("localhost", port, transactions);
-    client.sendTransactions();
+    try {
+      if (args.length > 1 && args[1].equals("async")) {
+        client.sendTransactionsAsync(args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_OUTSTANDING);
+      } else if (args.length > 1 && args[1].equals("stream")) {
+        client.streamTransactions(args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_OUTSTANDING);
+      } else if (args.length > 1) {
+        client.sendTransactionBatches(Integer.parseInt(args[1]));
+      } else {
+        client.sendTransactions();
+      }
+    } catch (InterruptedException e) {
+      System.err.println(e.getMessage());
+    }
 
     Runtime.getRuntime().addShutdownHook(new Thread(() -> {
       System.err.println("*** shutting down gRPC client since JVM is shutting down");
@@ -80,63 +303,4 @@ public class TravelAgencyClient {
       System.err.println("*** client shut down");
     }));
   }
-
-  private static List<Transaction> readTransactionsFromFile(String transactionFile) {
-    List<Transaction> transactions = new ArrayList<>();
-    try (BufferedReader br = new BufferedReader(new FileReader(transactionFile))) {
-
-      String sCurrentLine = br.readLine();
-      int noTransactions = Integer.parseInt(sCurrentLine);
-      Set<Variable> variables = new HashSet<>();
-
-      for (int noTransaction = 0; noTransaction < noTransactions; noTransaction++) {
-        sCurrentLine = br.readLine();
-        int noInstructions = Integer.parseInt(sCurrentLine.split(" ")[0]);
-        String transactionId = sCurrentLine.split(" ")[1];
-
-        Set<Variable> readSet = new HashSet<>();
-        Set<Variable> writeSet = new HashSet<>();
-        List<Operation> operations = new ArrayList<>();
-        for (int noInstruction = 0; noInstruction < noInstructions; noInstruction++) {
-          sCurrentLine = br.readLine();
-          String[] lineElements = sCurrentLine.split(" ");
-          String instruction = lineElements[0];
-          String var = lineElements[1];
-
-          Variable variable = Variable.newBuilder().setId(var).build();
-          variables.add(variable);
-
-          OperationParameters parameters = OperationParameters.newBuilder().build();
-          if (lineElements.length > 2) {
-            List<String> stringListParameters = new ArrayList<>();
-            for (int parameterIndex = 2; parameterIndex < lineElements.length; parameterIndex++) {
-              stringListParameters.add(lineElements[parameterIndex]);
-            }
-            parameters = OperationParameters.newBuilder().addAllParameters(stringListParameters).build();
-          }
-          Operation operation = Operation.newBuilder().setInstruction(instruction).setVariable(variable).
-              setParameters(parameters).build();
-
-          if (operation.getInstruction().equals("W") || operation.getInstruction().equals("D")) {
-            writeSet.add(operation.getVariable());
-          } else if (operation.getInstruction().equals("R")) {
-            readSet.add(operation.getVariable());
-          }
-
-          operations.add(operation);
-        }
-
-        Transaction transaction = Transaction.newBuilder().setId(transactionId).
-            addAllOperations(operations).
-            addAllReadSet(readSet).
-            addAllWriteSet(writeSet).
-            build();
-        transactions.add(transaction);
-      }
-
-    } catch (IOException e) {
-      System.err.println(e.getMessage());
-    }
-    return transactions;
-  }
 }
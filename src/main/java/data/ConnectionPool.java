@@ -0,0 +1,151 @@
+package data;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of long lived connections to one database. Connections are opened lazily up to the maximum size;
+ * once all of them are borrowed, callers block until one is released. Each connection keeps its own cache of prepared
+ * statements, which survives across borrows.
+ * <p>
+ * The size, set with {@code -D}{@value #SIZE_PROPERTY}, is what bounds the concurrent JDBC calls on the database
+ * besides its single writer connection, whatever the number of threads running transactions: every sqlite-jdbc call
+ * holds the monitor of its connection, so a virtual thread running one pins its carrier thread until it returns.
+ */
+public class ConnectionPool {
+  public static final String SIZE_PROPERTY = "data.poolSize";
+  private static final int DEFAULT_SIZE = 5;
+
+  private final String url;
+  private final int maxSize;
+  private final BlockingQueue<PooledConnection> idle = new LinkedBlockingQueue<>();
+  private final AtomicInteger opened = new AtomicInteger();
+  private final AtomicInteger borrowed = new AtomicInteger();
+
+  private final LongAdder borrows = new LongAdder();
+  private final LongAdder totalWaitNanos = new LongAdder();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+
+  public ConnectionPool(String url, int maxSize) {
+    this.url = url;
+    this.maxSize = maxSize;
+  }
+
+  public static ConnectionPool fromSystemProperties(String url) {
+    return new ConnectionPool(url, Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE));
+  }
+
+  public PooledConnection borrow() throws SQLException {
+    long start = System.nanoTime();
+    PooledConnection connection = idle.poll();
+    if (connection == null) {
+      connection = open();
+    }
+    if (connection == null) {
+      try {
+        connection = idle.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted while waiting for a connection to " + url);
+      }
+    }
+    long wait = System.nanoTime() - start;
+    borrows.increment();
+    totalWaitNanos.add(wait);
+    maxWaitNanos.accumulateAndGet(wait, Math::max);
+    borrowed.incrementAndGet();
+    return connection;
+  }
+
+  public void release(PooledConnection connection) {
+    if (connection == null) {
+      return;
+    }
+    borrowed.decrementAndGet();
+    try {
+      if (connection.isClosed()) {
+        opened.decrementAndGet();
+        return;
+      }
+    } catch (SQLException e) {
+      System.err.println(e);
+      opened.decrementAndGet();
+      return;
+    }
+    idle.offer(connection);
+  }
+
+  public void close() {
+    PooledConnection connection;
+    while ((connection = idle.poll()) != null) {
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        System.err.println(e);
+      }
+      opened.decrementAndGet();
+    }
+  }
+
+  private PooledConnection open() throws SQLException {
+    while (true) {
+      int current = opened.get();
+      if (current >= maxSize) {
+        return null;
+      }
+      if (opened.compareAndSet(current, current + 1)) {
+        try {
+          return new PooledConnection(DriverManager.getConnection(url), PooledConnection.STATEMENT_CACHE_SIZE);
+        } catch (SQLException e) {
+          opened.decrementAndGet();
+          throw e;
+        }
+      }
+    }
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public int getBorrowed() {
+    return borrowed.get();
+  }
+
+  public double getUtilization() {
+    return (double) borrowed.get() / maxSize;
+  }
+
+  public long getBorrows() {
+    return borrows.sum();
+  }
+
+  public double getAverageWaitMillis() {
+    long count = borrows.sum();
+    return count == 0 ? 0 : totalWaitNanos.sum() / 1e6 / count;
+  }
+
+  public double getMaxWaitMillis() {
+    return maxWaitNanos.get() / 1e6;
+  }
+
+  @Override
+  public String toString() {
+    return "ConnectionPool{" +
+        "url='" + url + '\'' +
+        ", borrowed=" + getBorrowed() + "/" + maxSize +
+        ", borrows=" + getBorrows() +
+        ", averageWaitMillis=" + getAverageWaitMillis() +
+        ", maxWaitMillis=" + getMaxWaitMillis() +
+        '}';
+  }
+}
@@ -0,0 +1,55 @@
+package data;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+public enum Database {
+  AIRLINES("airlines.db", "routes", "flights"),
+  HOTELS("hotels.db", "hotels"),
+  USERS("users.db", "users", "hotel_reservations");
+
+  private final String file;
+  private final String[] tables;
+
+  Database(String file, String... tables) {
+    this.file = file;
+    this.tables = tables;
+  }
+
+  /**
+   * Database files live in the working directory, or in the directory given with {@code -Ddata.dir}.
+   */
+  public static final String DIRECTORY_PROPERTY = "data.dir";
+
+  public static Path getDirectory() {
+    return Paths.get(System.getProperty(DIRECTORY_PROPERTY, ""));
+  }
+
+  public String getFile() {
+    return file;
+  }
+
+  public List<String> getTables() {
+    return Arrays.asList(tables);
+  }
+
+  public String getUrl() {
+    return "jdbc:sqlite:" + getDirectory().resolve(file);
+  }
+
+  /**
+   * Returns the database holding the table, or null if no database has it.
+   */
+  public static Database forTable(String table) {
+    for (Database database : values()) {
+      for (String databaseTable : database.tables) {
+        if (databaseTable.equals(table)) {
+          return database;
+        }
+      }
+    }
+    return null;
+  }
+}
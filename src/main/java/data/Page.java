@@ -0,0 +1,37 @@
+package data;
+
+import java.util.List;
+
+/**
+ * One page of a table read with keyset pagination: the rows that follow a key, in key order. The next page starts
+ * after {@link #getLastKey()}, so rows written in between never shift the pages the way an offset would.
+ */
+public class Page<T> {
+  private final List<T> rows;
+  private final long lastKey;
+  private final boolean last;
+
+  public Page(List<T> rows, long lastKey, int limit) {
+    this.rows = rows;
+    this.lastKey = lastKey;
+    this.last = rows.size() < limit;
+  }
+
+  public List<T> getRows() {
+    return rows;
+  }
+
+  /**
+   * Key of the last row of the page, or the key the page started after if it is empty.
+   */
+  public long getLastKey() {
+    return lastKey;
+  }
+
+  /**
+   * Whether there are no rows after this page.
+   */
+  public boolean isLast() {
+    return last;
+  }
+}
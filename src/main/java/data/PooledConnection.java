@@ -0,0 +1,104 @@
+package data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A connection together with a bounded cache of the statements prepared on it, keyed by their SQL. Statements handed
+ * out by {@link #prepareStatement(String)} stay open and must not be closed by the caller; the least recently used one
+ * is closed once the cache is full.
+ */
+public class PooledConnection {
+  public static final int STATEMENT_CACHE_SIZE = 32;
+
+  private final Connection connection;
+  private final StatementCache statements;
+  private long hits;
+  private long misses;
+
+  public PooledConnection(Connection connection, int statementCacheSize) {
+    this.connection = connection;
+    this.statements = new StatementCache(statementCacheSize);
+  }
+
+  /**
+   * Returns the cached statement of the SQL with its parameters cleared, or prepares a new one. A statement whose last
+   * execution failed cannot run again with sqlite-jdbc, even though it does not report itself closed, and fails to clear
+   * its parameters too: it is closed and replaced instead of being handed out.
+   */
+  public PreparedStatement prepareStatement(String sql) throws SQLException {
+    PreparedStatement statement = statements.get(sql);
+    if (statement != null && !statement.isClosed()) {
+      try {
+        statement.clearParameters();
+        hits++;
+        return statement;
+      } catch (SQLException e) {
+        statements.remove(sql);
+        closeStatement(statement);
+      }
+    }
+    misses++;
+    statement = connection.prepareStatement(sql);
+    statements.put(sql, statement);
+    return statement;
+  }
+
+  public Connection getConnection() {
+    return connection;
+  }
+
+  public boolean isClosed() throws SQLException {
+    return connection.isClosed();
+  }
+
+  public long getStatementCacheHits() {
+    return hits;
+  }
+
+  public long getStatementCacheMisses() {
+    return misses;
+  }
+
+  public void close() throws SQLException {
+    for (PreparedStatement statement : statements.values()) {
+      closeStatement(statement);
+    }
+    statements.clear();
+    connection.close();
+  }
+
+  private static void closeStatement(PreparedStatement statement) {
+    try {
+      statement.close();
+    } catch (SQLException e) {
+      System.err.println(e);
+    }
+  }
+
+  /**
+   * Statements in access order, closing the least recently used one beyond the maximum size.
+   */
+  private static class StatementCache extends LinkedHashMap<String, PreparedStatement> {
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+
+    private StatementCache(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+      if (size() <= maxSize) {
+        return false;
+      }
+      closeStatement(eldest.getValue());
+      return true;
+    }
+  }
+}
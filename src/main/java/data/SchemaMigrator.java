@@ -0,0 +1,148 @@
+package data;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Brings the schema of a database up to date. Every database stores the number of migrations applied to it in its
+ * {@code user_version}, and the missing ones are applied in order, each in its own transaction. Also switches the
+ * database to write-ahead logging, so that readers on pooled connections no longer block the writer connection nor
+ * wait for it.
+ */
+public class SchemaMigrator {
+
+  private static final Set<String> migratedUrls = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Runs at most once per database file and process, so every manager can call it when it opens its own connection.
+   */
+  public static void migrate(Database database) throws SQLException {
+    String url = database.getUrl();
+    if (migratedUrls.contains(url)) {
+      return;
+    }
+    try (Connection connection = DriverManager.getConnection(url)) {
+      migrate(database, connection);
+    }
+    migratedUrls.add(url);
+  }
+
+  public static void migrate(Database database, Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      // Cannot change inside a transaction, and is kept by the database file once set
+      statement.execute("PRAGMA journal_mode = WAL");
+
+      List<String[]> migrations = migrations(database);
+      int version = userVersion(statement);
+      if (version >= migrations.size()) {
+        return;
+      }
+      boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      try {
+        for (int i = version; i < migrations.size(); i++) {
+          for (String sql : migrations.get(i)) {
+            statement.executeUpdate(sql);
+          }
+          statement.executeUpdate("PRAGMA user_version = " + (i + 1));
+          connection.commit();
+          System.out.println("Migrated " + database + " to schema version " + (i + 1));
+        }
+      } catch (SQLException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(autoCommit);
+      }
+    }
+  }
+
+  private static int userVersion(Statement statement) throws SQLException {
+    try (ResultSet rs = statement.executeQuery("PRAGMA user_version")) {
+      return rs.next() ? rs.getInt(1) : 0;
+    }
+  }
+
+  /**
+   * The migrations of each database, oldest first. Applied migrations must never change, new ones are appended.
+   */
+  private static List<String[]> migrations(Database database) {
+    List<String[]> migrations = new ArrayList<>(tableMigrations(database));
+    migrations.add(new String[]{
+        // The LSN of the last write-ahead log record contained in the database, see GroupCommitter
+        "CREATE TABLE IF NOT EXISTS tm_checkpoint (lsn INTEGER NOT NULL)",
+        "INSERT INTO tm_checkpoint (lsn) SELECT 0 WHERE NOT EXISTS (SELECT * FROM tm_checkpoint)"
+    });
+    return migrations;
+  }
+
+  private static List<String[]> tableMigrations(Database database) {
+    switch (database) {
+      case AIRLINES:
+        return Arrays.asList(
+            new String[]{
+                "CREATE TABLE IF NOT EXISTS routes (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "source VARCHAR(100), " +
+                    "destination VARCHAR(100))",
+                "CREATE TABLE IF NOT EXISTS flights (" +
+                    "route_id INT NOT NULL, " +
+                    "departure_time TIMESTAMP, " +
+                    "arrival_time TIMESTAMP, " +
+                    "CONSTRAINT flights_routes_id_fk FOREIGN KEY (route_id) REFERENCES routes (id))"
+            },
+            new String[]{
+                // Searches by destination, then joins the flights of the matching routes
+                "CREATE INDEX IF NOT EXISTS routes_destination_idx ON routes (destination)",
+                // Covers the join and the removal of a single flight
+                "CREATE INDEX IF NOT EXISTS flights_route_id_times_idx " +
+                    "ON flights (route_id, departure_time, arrival_time)"
+            });
+      case HOTELS:
+        return Arrays.asList(
+            new String[]{
+                "CREATE TABLE IF NOT EXISTS hotels (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "name VARCHAR(100), " +
+                    "city VARCHAR(100), " +
+                    "address VARCHAR(100), " +
+                    "stars INT, " +
+                    "capacity INT)"
+            },
+            new String[]{
+                "CREATE INDEX IF NOT EXISTS hotels_city_idx ON hotels (city)"
+            });
+      case USERS:
+        return Arrays.asList(
+            new String[]{
+                "CREATE TABLE IF NOT EXISTS users (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "name VARCHAR(100), " +
+                    "age INT)",
+                "CREATE TABLE IF NOT EXISTS hotel_reservations (" +
+                    "user_id INT, " +
+                    "hotel_id INT PRIMARY KEY, " +
+                    "arrival TIMESTAMP, " +
+                    "departure INT, " +
+                    "no_rooms INT)",
+                "CREATE TABLE IF NOT EXISTS airline_reservation (" +
+                    "user_id INT, " +
+                    "flight_id INT PRIMARY KEY)"
+            },
+            new String[]{
+                "CREATE INDEX IF NOT EXISTS hotel_reservations_user_id_hotel_id_idx " +
+                    "ON hotel_reservations (user_id, hotel_id)"
+            });
+      default:
+        throw new IllegalArgumentException("No schema for " + database);
+    }
+  }
+}
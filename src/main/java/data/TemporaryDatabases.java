@@ -0,0 +1,64 @@
+package data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Copies the database files into a temporary directory and points {@link Database} at it, so that tests and
+ * benchmarks never write to the real databases. Benchmarks copy from the directory given with
+ * {@code -Dbenchmark.sourceDir}, tests start from {@link #empty()}.
+ */
+public class TemporaryDatabases {
+
+  private final Path directory;
+  private final String previousDirectory;
+
+  public TemporaryDatabases(Path source) throws IOException {
+    directory = Files.createTempDirectory("travel-agency");
+    for (Database database : Database.values()) {
+      Files.copy(source.resolve(database.getFile()), directory.resolve(database.getFile()));
+    }
+    previousDirectory = System.setProperty(Database.DIRECTORY_PROPERTY, directory.toString());
+  }
+
+  /**
+   * Copies the databases in the working directory and deletes every row of their tables.
+   */
+  public static TemporaryDatabases empty() throws IOException, SQLException {
+    TemporaryDatabases databases = new TemporaryDatabases(Paths.get(""));
+    for (Database database : Database.values()) {
+      List<String> tables = database.getTables();
+      try (Connection connection = DriverManager.getConnection(database.getUrl());
+           Statement statement = connection.createStatement()) {
+        for (int i = tables.size() - 1; i >= 0; i--) {
+          statement.executeUpdate("DELETE FROM " + tables.get(i));
+        }
+      }
+    }
+    return databases;
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  public void delete() throws IOException {
+    if (previousDirectory == null) {
+      System.clearProperty(Database.DIRECTORY_PROPERTY);
+    } else {
+      System.setProperty(Database.DIRECTORY_PROPERTY, previousDirectory);
+    }
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+}
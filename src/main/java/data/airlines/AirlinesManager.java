@@ -1,23 +1,70 @@
 package data.airlines;
 
+import data.ConnectionPool;
+import data.Database;
+import data.OperationException;
+import data.Page;
+import data.PooledConnection;
+import data.SchemaMigrator;
+
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 
 public class AirlinesManager {
-  private Connection connection;
+  static final String FLIGHTS_TO_DESTINATION_QUERY = "SELECT " +
+      "  r.id, " +
+      "  r.source, " +
+      "  r.destination, " +
+      "  f.departure_time, " +
+      "  f.arrival_time " +
+      "FROM flights f " +
+      "  INNER JOIN routes r ON f.route_id = r.id " +
+      "WHERE r.destination = ?";
+  static final String ROUTE_FLIGHTS_QUERY = "SELECT " +
+      "  r.id, " +
+      "  r.source, " +
+      "  r.destination, " +
+      "  f.departure_time, " +
+      "  f.arrival_time " +
+      "FROM flights f " +
+      "  INNER JOIN routes r ON f.route_id = r.id " +
+      "WHERE r.id = ?";
+  static final String REMOVE_FLIGHT_QUERY =
+      "DELETE FROM flights WHERE route_id = ? and departure_time = ? and arrival_time = ?";
+
+  private ConnectionPool pool;
+  private PooledConnection connection;
+  private boolean sharedConnection;
 
   public AirlinesManager() {
     // create a database connection
     try {
-      connection = DriverManager.getConnection("jdbc:sqlite:airlines.db");
+      SchemaMigrator.migrate(Database.AIRLINES);
+      connection = new PooledConnection(DriverManager.getConnection(Database.AIRLINES.getUrl()), PooledConnection.STATEMENT_CACHE_SIZE);
+    } catch (SQLException e) {
+      System.err.println(e);
+    }
+  }
+
+  /**
+   * Runs on a connection owned by the caller, which is left open by {@link #close()}.
+   */
+  public AirlinesManager(PooledConnection connection) {
+    this.connection = connection;
+    this.sharedConnection = true;
+  }
+
+  public AirlinesManager(ConnectionPool pool) {
+    this.pool = pool;
+    try {
+      connection = pool.borrow();
     } catch (SQLException e) {
       System.err.println(e);
     }
   }
 
   public List<Flight> getAllFlights() {
-    PreparedStatement statement = null;
     ResultSet rs = null;
     List<Flight> flights = new ArrayList<>();
     try {
@@ -29,7 +76,7 @@ public class AirlinesManager {
           "  f.arrival_time " +
           "FROM flights f " +
           "  INNER JOIN routes r ON f.route_id = r.id";
-      statement = connection.prepareStatement(query);
+      PreparedStatement statement = connection.prepareStatement(query);
       rs = statement.executeQuery();
       while (rs.next()) {
         // read the result set
@@ -44,9 +91,6 @@ public class AirlinesManager {
         if (rs != null) {
           rs.close();
         }
-        if (statement != null) {
-          statement.close();
-        }
       } catch (SQLException e) {
         System.err.println(e);
       }
@@ -54,21 +98,54 @@ public class AirlinesManager {
     return flights;
   }
 
-  public List<Flight> getFlights(String toDestination) {
-    PreparedStatement statement = null;
+  /**
+   * Reads the flights after the given key, in key order. Flights have no id, so their key is the row id.
+   */
+  public Page<Flight> getFlightsPage(long afterKey, int limit) throws OperationException {
     ResultSet rs = null;
     List<Flight> flights = new ArrayList<>();
+    long lastKey = afterKey;
     try {
       String query = "SELECT " +
           "  r.id, " +
           "  r.source, " +
           "  r.destination, " +
           "  f.departure_time, " +
-          "  f.arrival_time " +
+          "  f.arrival_time, " +
+          "  f.rowid " +
           "FROM flights f " +
           "  INNER JOIN routes r ON f.route_id = r.id " +
-          "WHERE r.destination = ?";
-      statement = connection.prepareStatement(query);
+          "WHERE f.rowid > ? " +
+          "ORDER BY f.rowid " +
+          "LIMIT ?";
+      PreparedStatement statement = connection.prepareStatement(query);
+      statement.setLong(1, afterKey);
+      statement.setInt(2, limit);
+      rs = statement.executeQuery();
+      while (rs.next()) {
+        flights.add(extractFlight(rs));
+        lastKey = rs.getLong(6);
+      }
+    } catch (SQLException e) {
+      System.err.println(e.getMessage());
+      throw new OperationException(e.getMessage());
+    } finally {
+      try {
+        if (rs != null) {
+          rs.close();
+        }
+      } catch (SQLException e) {
+        System.err.println(e);
+      }
+    }
+    return new Page<>(flights, lastKey, limit);
+  }
+
+  public List<Flight> getFlights(String toDestination) {
+    ResultSet rs = null;
+    List<Flight> flights = new ArrayList<>();
+    try {
+      PreparedStatement statement = connection.prepareStatement(FLIGHTS_TO_DESTINATION_QUERY);
       statement.setString(1, toDestination);
       rs = statement.executeQuery();
       while (rs.next()) {
@@ -84,8 +161,32 @@ public class AirlinesManager {
         if (rs != null) {
           rs.close();
         }
-        if (statement != null) {
-          statement.close();
+      } catch (SQLException e) {
+        System.err.println(e);
+      }
+    }
+    return flights;
+  }
+
+  public List<Flight> getRouteFlights(int routeId) {
+    ResultSet rs = null;
+    List<Flight> flights = new ArrayList<>();
+    try {
+      PreparedStatement statement = connection.prepareStatement(ROUTE_FLIGHTS_QUERY);
+      statement.setInt(1, routeId);
+      rs = statement.executeQuery();
+      while (rs.next()) {
+        // read the result set
+        Flight flight = extractFlight(rs);
+
+        flights.add(flight);
+      }
+    } catch (SQLException e) {
+      System.err.println(e.getMessage());
+    } finally {
+      try {
+        if (rs != null) {
+          rs.close();
         }
       } catch (SQLException e) {
         System.err.println(e);
@@ -105,12 +206,11 @@ public class AirlinesManager {
   }
 
   public Route getRoute(int routeId) {
-    PreparedStatement statement = null;
     ResultSet rs = null;
     Route route = null;
     try {
       String query = "SELECT * FROM routes WHERE id = ?";
-      statement = connection.prepareStatement(query);
+      PreparedStatement statement = connection.prepareStatement(query);
       statement.setInt(1, routeId);
       rs = statement.executeQuery();
       while (rs.next()) {
@@ -128,9 +228,6 @@ public class AirlinesManager {
         if (rs != null) {
           rs.close();
         }
-        if (statement != null) {
-          statement.close();
-        }
       } catch (SQLException e) {
         System.err.println(e);
       }
@@ -139,93 +236,63 @@ public class AirlinesManager {
   }
 
   public void addRoute(Route route) {
-    PreparedStatement statement = null;
     try {
       String query = "INSERT INTO routes (id, source, destination) VALUES (?, ?, ?)";
-      statement = connection.prepareStatement(query);
+      PreparedStatement statement = connection.prepareStatement(query);
       statement.setInt(1, route.getId());
       statement.setString(2, route.getSource());
       statement.setString(3, route.getDestination());
       statement.executeUpdate();
     } catch (SQLException e) {
       System.err.println(e.getMessage());
-    } finally {
-      try {
-        if (statement != null) {
-          statement.close();
-        }
-      } catch (SQLException e) {
-        System.err.println(e);
-      }
     }
   }
 
   public void removeRoute(int routeId) {
-    PreparedStatement statement = null;
     try {
       String query = "DELETE FROM routes " +
           "WHERE id = ?";
-      statement = connection.prepareStatement(query);
+      PreparedStatement statement = connection.prepareStatement(query);
       statement.setInt(1, routeId);
       statement.executeUpdate();
     } catch (SQLException e) {
       System.err.println(e.getMessage());
-    } finally {
-      try {
-        if (statement != null) {
-          statement.close();
-        }
-      } catch (SQLException e) {
-        System.err.println(e);
-      }
     }
   }
 
   public void addFlight(Flight flight) {
-    PreparedStatement statement = null;
     try {
       String query = "INSERT INTO flights (route_id, departure_time, arrival_time) VALUES (?, ?, ?)";
-      statement = connection.prepareStatement(query);
+      PreparedStatement statement = connection.prepareStatement(query);
       statement.setInt(1, flight.getRoute().getId());
       statement.setTimestamp(2, flight.getDeparture());
       statement.setTimestamp(3, flight.getArrival());
       statement.executeUpdate();
     } catch (SQLException e) {
       System.err.println(e.getMessage());
-    } finally {
-      try {
-        if (statement != null) {
-          statement.close();
-        }
-      } catch (SQLException e) {
-        System.err.println(e);
-      }
     }
   }
 
   public void removeFlight(Flight flight) {
-    PreparedStatement statement = null;
     try {
-      String query = "DELETE FROM flights WHERE route_id = ? and departure_time = ? and arrival_time = ?";
-      statement = connection.prepareStatement(query);
+      PreparedStatement statement = connection.prepareStatement(REMOVE_FLIGHT_QUERY);
       statement.setInt(1, flight.getRoute().getId());
       statement.setTimestamp(2, flight.getDeparture());
       statement.setTimestamp(3, flight.getArrival());
       statement.executeUpdate();
     } catch (SQLException e) {
       System.err.println(e.getMessage());
-    } finally {
-      try {
-        if (statement != null) {
-          statement.close();
-        }
-      } catch (SQLException e) {
-        System.err.println(e);
-      }
     }
   }
 
   public void close() {
+    if (pool != null) {
+      pool.release(connection);
+      return;
+    }
+    if (sharedConnection) {
+      return;
+    }
     try {
       if (connection != null)
         connection.close();
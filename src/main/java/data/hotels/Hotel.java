@@ -17,6 +17,30 @@ public class Hotel {
     this.capacity = capacity;
   }
 
+  public int getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getCity() {
+    return city;
+  }
+
+  public String getAddress() {
+    return address;
+  }
+
+  public int getStars() {
+    return stars;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
   @Override
   public String toString() {
     return "Hotel{" +
@@ -1,30 +1,59 @@
 package data.hotels;
 
+import data.ConnectionPool;
+import data.Database;
+import data.OperationException;
+import data.Page;
+import data.PooledConnection;
+import data.SchemaMigrator;
+
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 
 public class HotelsManager {
+  static final String HOTELS_IN_CITY_QUERY = "SELECT * " +
+      "FROM hotels h " +
+      "WHERE h.city = ?";
 
-  private Connection connection;
+  private ConnectionPool pool;
+  private PooledConnection connection;
+  private boolean sharedConnection;
 
   public HotelsManager() {
     // create a database connection
     try {
-      connection = DriverManager.getConnection("jdbc:sqlite:hotels.db");
+      SchemaMigrator.migrate(Database.HOTELS);
+      connection = new PooledConnection(DriverManager.getConnection(Database.HOTELS.getUrl()), PooledConnection.STATEMENT_CACHE_SIZE);
+    } catch (SQLException e) {
+      System.err.println(e);
+    }
+  }
+
+  /**
+   * Runs on a connection owned by the caller, which is left open by {@link #close()}.
+   */
+  public HotelsManager(PooledConnection connection) {
+    this.connection = connection;
+    this.sharedConnection = true;
+  }
+
+  public HotelsManager(ConnectionPool pool) {
+    this.pool = pool;
+    try {
+      connection = pool.borrow();
     } catch (SQLException e) {
       System.err.println(e);
     }
   }
 
   public List<Hotel> getAllHotels() {
-    PreparedStatement statement = null;
     ResultSet rs = null;
     List<Hotel> hotels = new ArrayList<>();
     try {
       String query = "SELECT * " +
           "FROM hotels";
-      statement = connection.prepareStatement(query);
+      PreparedStatement statement = connection.prepareStatement(query);
       rs = statement.executeQuery();
       while (rs.next()) {
         // read the result set
@@ -38,9 +67,6 @@ public class HotelsManager {
         if (rs != null) {
           rs.close();
         }
-        if (statement != null) {
-          statement.close();
-        }
       } catch (SQLException e) {
         System.err.println(e);
       }
@@ -48,15 +74,45 @@ public class HotelsManager {
     return hotels;
   }
 
-  public List<Hotel> getHotels(String toDestination) {
-    PreparedStatement statement = null;
+  public Page<Hotel> getHotelsPage(long afterId, int limit) throws OperationException {
     ResultSet rs = null;
     List<Hotel> hotels = new ArrayList<>();
+    long lastKey = afterId;
     try {
       String query = "SELECT * " +
-          "FROM hotels h " +
-          "WHERE h.city = ?";
-      statement = connection.prepareStatement(query);
+          "FROM hotels " +
+          "WHERE id > ? " +
+          "ORDER BY id " +
+          "LIMIT ?";
+      PreparedStatement statement = connection.prepareStatement(query);
+      statement.setLong(1, afterId);
+      statement.setInt(2, limit);
+      rs = statement.executeQuery();
+      while (rs.next()) {
+        Hotel hotel = extractHotel(rs);
+        hotels.add(hotel);
+        lastKey = hotel.getId();
+      }
+    } catch (SQLException e) {
+      System.err.println(e.getMessage());
+      throw new OperationException(e.getMessage());
+    } finally {
+      try {
+        if (rs != null) {
+          rs.close();
+        }
+      } catch (SQLException e) {
+        System.err.println(e);
+      }
+    }
+    return new Page<>(hotels, lastKey, limit);
+  }
+
+  public List<Hotel> getHotels(String toDestination) {
+    ResultSet rs = null;
+    List<Hotel> hotels = new ArrayList<>();
+    try {
+      PreparedStatement statement = connection.prepareStatement(HOTELS_IN_CITY_QUERY);
       statement.setString(1, toDestination);
       rs = statement.executeQuery();
       while (rs.next()) {
@@ -71,9 +127,6 @@ public class HotelsManager {
         if (rs != null) {
           rs.close();
         }
-        if (statement != null) {
-          statement.close();
-        }
       } catch (SQLException e) {
         System.err.println(e);
       }
@@ -93,6 +146,13 @@ public class HotelsManager {
   }
 
   public void close() {
+    if (pool != null) {
+      pool.release(connection);
+      return;
+    }
+    if (sharedConnection) {
+      return;
+    }
     try {
       if (connection != null)
         connection.close();
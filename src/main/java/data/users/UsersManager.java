@@ -1,32 +1,60 @@
 package data.users;
 
+import data.ConnectionPool;
+import data.Database;
 import data.OperationException;
+import data.Page;
+import data.PooledConnection;
+import data.SchemaMigrator;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 
 public class UsersManager {
+  static final String HOTEL_RESERVATION_QUERY = "SELECT * " +
+      "FROM hotel_reservations WHERE user_id = ? and hotel_id = ?";
+  static final String REMOVE_HOTEL_RESERVATION_QUERY =
+      "DELETE FROM hotel_reservations WHERE user_id = ? AND hotel_id = ?";
 
-  private Connection connection;
+  private ConnectionPool pool;
+  private PooledConnection connection;
+  private boolean sharedConnection;
 
   public UsersManager() {
     // create a database connection
     try {
-      connection = DriverManager.getConnection("jdbc:sqlite:users.db");
+      SchemaMigrator.migrate(Database.USERS);
+      connection = new PooledConnection(DriverManager.getConnection(Database.USERS.getUrl()), PooledConnection.STATEMENT_CACHE_SIZE);
+    } catch (SQLException e) {
+      System.err.println(e);
+    }
+  }
+
+  /**
+   * Runs on a connection owned by the caller, which is left open by {@link #close()}.
+   */
+  public UsersManager(PooledConnection connection) {
+    this.connection = connection;
+    this.sharedConnection = true;
+  }
+
+  public UsersManager(ConnectionPool pool) {
+    this.pool = pool;
+    try {
+      connection = pool.borrow();
     } catch (SQLException e) {
       System.err.println(e);
     }
   }
 
   public List<User> getAllUsers() throws OperationException {
-    PreparedStatement statement = null;
     ResultSet rs = null;
     List<User> users = new ArrayList<>();
     try {
       String query = "SELECT * " +
           "FROM users";
-      statement = connection.prepareStatement(query);
+      PreparedStatement statement = connection.prepareStatement(query);
       rs = statement.executeQuery();
       while (rs.next()) {
         // read the result set
@@ -42,9 +70,6 @@ public class UsersManager {
         if (rs != null) {
           rs.close();
         }
-        if (statement != null) {
-          statement.close();
-        }
       } catch (SQLException e) {
         System.err.println(e);
       }
@@ -52,6 +77,40 @@ public class UsersManager {
     return users;
   }
 
+  public Page<User> getUsersPage(long afterId, int limit) throws OperationException {
+    ResultSet rs = null;
+    List<User> users = new ArrayList<>();
+    long lastKey = afterId;
+    try {
+      String query = "SELECT * " +
+          "FROM users " +
+          "WHERE id > ? " +
+          "ORDER BY id " +
+          "LIMIT ?";
+      PreparedStatement statement = connection.prepareStatement(query);
+      statement.setLong(1, afterId);
+      statement.setInt(2, limit);
+      rs = statement.executeQuery();
+      while (rs.next()) {
+        User user = extractUser(rs);
+        users.add(user);
+        lastKey = user.getId();
+      }
+    } catch (SQLException e) {
+      System.err.println(e.getMessage());
+      throw new OperationException(e.getMessage());
+    } finally {
+      try {
+        if (rs != null) {
+          rs.close();
+        }
+      } catch (SQLException e) {
+        System.err.println(e);
+      }
+    }
+    return new Page<>(users, lastKey, limit);
+  }
+
   private User extractUser(ResultSet rs) throws SQLException {
     int userId = rs.getInt(1);
     String name = rs.getString(2);
@@ -60,10 +119,9 @@ public class UsersManager {
   }
 
   public void addUser(User user) throws OperationException {
-    PreparedStatement statement = null;
     try {
       String query = "INSERT INTO users (id, name, age) VALUES (?, ?, ?)";
-      statement = connection.prepareStatement(query);
+      PreparedStatement statement = connection.prepareStatement(query);
       statement.setInt(1, user.getId());
       statement.setString(2, user.getName());
       statement.setInt(3, user.getAge());
@@ -71,25 +129,52 @@ public class UsersManager {
     } catch (SQLException e) {
       System.err.println(e.getMessage());
       throw new OperationException(e.getMessage());
+    }
+  }
+
+  public User getUser(int userId) throws OperationException {
+    ResultSet rs = null;
+    User user = null;
+    try {
+      String query = "SELECT * FROM users WHERE id = ?";
+      PreparedStatement statement = connection.prepareStatement(query);
+      statement.setInt(1, userId);
+      rs = statement.executeQuery();
+      while (rs.next()) {
+        user = extractUser(rs);
+      }
+    } catch (SQLException e) {
+      System.err.println(e.getMessage());
+      throw new OperationException(e.getMessage());
     } finally {
       try {
-        if (statement != null) {
-          statement.close();
+        if (rs != null) {
+          rs.close();
         }
       } catch (SQLException e) {
         System.err.println(e);
       }
     }
+    return user;
+  }
+
+  public void removeUser(int userId) throws OperationException {
+    try {
+      String query = "DELETE FROM users WHERE id = ?";
+      PreparedStatement statement = connection.prepareStatement(query);
+      statement.setInt(1, userId);
+      statement.executeUpdate();
+    } catch (SQLException e) {
+      System.err.println(e.getMessage());
+      throw new OperationException(e.getMessage());
+    }
   }
 
   public HotelReservation getHotelReservation(int userId, int hotelId) throws OperationException {
-    PreparedStatement statement = null;
     ResultSet rs = null;
     HotelReservation hotelReservation = null;
     try {
-      String query = "SELECT * " +
-          "FROM hotel_reservations WHERE user_id = ? and hotel_id = ?";
-      statement = connection.prepareStatement(query);
+      PreparedStatement statement = connection.prepareStatement(HOTEL_RESERVATION_QUERY);
       statement.setInt(1, userId);
       statement.setInt(2, hotelId);
       rs = statement.executeQuery();
@@ -108,9 +193,6 @@ public class UsersManager {
         if (rs != null) {
           rs.close();
         }
-        if (statement != null) {
-          statement.close();
-        }
       } catch (SQLException e) {
         System.err.println(e);
       }
@@ -119,10 +201,9 @@ public class UsersManager {
   }
 
   public void reserveHotel(HotelReservation hotelReservation) throws OperationException {
-    PreparedStatement statement = null;
     try {
       String query = "INSERT INTO hotel_reservations (user_id, hotel_id, arrival, departure, no_rooms) VALUES (?, ?, ?, ?, ?)";
-      statement = connection.prepareStatement(query);
+      PreparedStatement statement = connection.prepareStatement(query);
       statement.setInt(1, hotelReservation.getUserId());
       statement.setInt(2, hotelReservation.getHotelId());
       statement.setTimestamp(3, hotelReservation.getArrival());
@@ -132,40 +213,29 @@ public class UsersManager {
     } catch (SQLException e) {
       System.err.println(e.getMessage());
       throw new OperationException(e.getMessage());
-    } finally {
-      try {
-        if (statement != null) {
-          statement.close();
-        }
-      } catch (SQLException e) {
-        System.err.println(e);
-      }
     }
   }
 
   public void removeHotelReservation(int userId, int hotelId) throws OperationException {
-    PreparedStatement statement = null;
     try {
-      String query = "DELETE FROM hotel_reservations WHERE user_id = ? AND hotel_id = ?";
-      statement = connection.prepareStatement(query);
+      PreparedStatement statement = connection.prepareStatement(REMOVE_HOTEL_RESERVATION_QUERY);
       statement.setInt(1, userId);
       statement.setInt(2, hotelId);
       statement.executeUpdate();
     } catch (SQLException e) {
       System.err.println(e.getMessage());
       throw new OperationException(e.getMessage());
-    } finally {
-      try {
-        if (statement != null) {
-          statement.close();
-        }
-      } catch (SQLException e) {
-        System.err.println(e);
-      }
     }
   }
 
   public void close() {
+    if (pool != null) {
+      pool.release(connection);
+      return;
+    }
+    if (sharedConnection) {
+      return;
+    }
     try {
       if (connection != null)
         connection.close();
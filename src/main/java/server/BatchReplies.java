@@ -0,0 +1,106 @@
+package server;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects the replies of the transactions of one batched request, which finish concurrently and in any order. The
+ * replies are either streamed to the caller as they arrive, tagged with their transaction id, or aggregated in request
+ * order into a single reply once all transactions finished.
+ */
+public class BatchReplies {
+
+  private final StreamObserver<TransactionReply> responseObserver;
+  private final boolean streamed;
+  private final TransactionReply[] replies;
+  private final AtomicInteger remaining;
+  // gRPC observers are not thread safe
+  private final ReentrantLock responseLock = new ReentrantLock();
+
+  private BatchReplies(StreamObserver<TransactionReply> responseObserver, int size, boolean streamed) {
+    this.responseObserver = responseObserver;
+    this.streamed = streamed;
+    this.replies = new TransactionReply[size];
+    this.remaining = new AtomicInteger(size);
+  }
+
+  public static BatchReplies streamed(StreamObserver<TransactionReply> responseObserver, int size) {
+    return new BatchReplies(responseObserver, size, true);
+  }
+
+  public static BatchReplies aggregated(StreamObserver<TransactionReply> responseObserver, int size) {
+    return new BatchReplies(responseObserver, size, false);
+  }
+
+  /**
+   * The observer the transaction at the index replies to. A transaction that fails with an error status, e.g. because
+   * it was rejected, gets a reply with the status instead of failing the whole batch.
+   */
+  public StreamObserver<TransactionReply> forTransaction(int index, String transactionId) {
+    return new StreamObserver<TransactionReply>() {
+      @Override
+      public void onNext(TransactionReply reply) {
+        reply(index, reply.toBuilder().setTransactionId(transactionId).build());
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        onNext(errorReply(t));
+        onCompleted();
+      }
+
+      @Override
+      public void onCompleted() {
+        if (remaining.decrementAndGet() == 0) {
+          complete();
+        }
+      }
+    };
+  }
+
+  static TransactionReply errorReply(Throwable t) {
+    Status status = Status.fromThrowable(t);
+    return TransactionReply.newBuilder()
+        .setMessage(status.getCode() + (status.getDescription() == null ? "" : ": " + status.getDescription()))
+        .build();
+  }
+
+  private void reply(int index, TransactionReply reply) {
+    if (!streamed) {
+      replies[index] = reply;
+      return;
+    }
+    responseLock.lock();
+    try {
+      responseObserver.onNext(reply);
+    } finally {
+      responseLock.unlock();
+    }
+  }
+
+  private void complete() {
+    responseLock.lock();
+    try {
+      if (!streamed) {
+        StringBuilder messageBuilder = new StringBuilder();
+        boolean success = true;
+        for (TransactionReply reply : replies) {
+          messageBuilder.append(reply.getTransactionId()).append(": ").append(reply.getMessage()).append("\n");
+          success &= reply.getSuccess();
+        }
+        responseObserver.onNext(TransactionReply.newBuilder()
+            .setMessage(messageBuilder.toString())
+            .setSuccess(success)
+            .addAllReplies(Arrays.asList(replies))
+            .build());
+      }
+      responseObserver.onCompleted();
+    } finally {
+      responseLock.unlock();
+    }
+  }
+}
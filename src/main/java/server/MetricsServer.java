@@ -0,0 +1,205 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import data.ConnectionPool;
+import data.Database;
+import transactionmanager.ConcurrencyControl;
+import transactionmanager.GroupCommitter;
+import transactionmanager.Histogram;
+import transactionmanager.SearchCache;
+import transactionmanager.TransactionExecutor;
+import transactionmanager.TransactionManager;
+import transactionmanager.TransactionMetrics;
+import transactionmanager.TwoPhaseLocking;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Serves the metrics of the transaction manager in the Prometheus text format on
+ * {@code http://localhost:<port>/metrics}. The port is set with the {@value #PORT_PROPERTY} system property, 0 turns
+ * the endpoint off. It only listens on the loopback interface, so scrapers run next to the server.
+ */
+class MetricsServer {
+
+  static final String PORT_PROPERTY = "server.metricsPort";
+  private static final int DEFAULT_PORT = 9464;
+
+  private final TransactionManager transactionManager;
+  private final int port;
+  private HttpServer server;
+
+  MetricsServer(TransactionManager transactionManager, int port) {
+    this.transactionManager = transactionManager;
+    this.port = port;
+  }
+
+  /**
+   * The metrics server on the configured port, or null if it is turned off.
+   */
+  static MetricsServer fromSystemProperty(TransactionManager transactionManager) {
+    int port = Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT);
+    return port == 0 ? null : new MetricsServer(transactionManager, port);
+  }
+
+  void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.createContext("/metrics", this::handle);
+    server.start();
+  }
+
+  void stop() {
+    if (server != null) {
+      server.stop(0);
+    }
+  }
+
+  int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      byte[] body = render().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  String render() {
+    StringBuilder out = new StringBuilder();
+    TransactionExecutor executor = transactionManager.getExecutor();
+    TransactionMetrics metrics = transactionManager.getMetrics();
+    ConcurrencyControl concurrencyControl = transactionManager.getConcurrencyControl();
+
+    counter(out, "travelagency_transactions_committed_total", "Transactions committed.",
+        transactionManager.getCommittedTransactions());
+    counter(out, "travelagency_transactions_failed_total", "Transactions rolled back and failed.",
+        transactionManager.getFailedTransactions());
+    counter(out, "travelagency_transactions_restarted_total",
+        "Attempts aborted by the concurrency control and retried.", transactionManager.getRestartedTransactions());
+    counter(out, "travelagency_transactions_rejected_total", "Transactions rejected because the queue was full.",
+        executor.getRejected());
+    counter(out, "travelagency_concurrency_aborts_total", "Aborts decided by the concurrency control.",
+        concurrencyControl.getAborts());
+    if (concurrencyControl instanceof TwoPhaseLocking) {
+      counter(out, "travelagency_deadlock_victims_total", "Transactions aborted to break a deadlock.",
+          ((TwoPhaseLocking) concurrencyControl).getDeadlockDetector().getVictims());
+    }
+
+    gauge(out, "travelagency_executor_queue_depth", "Transactions waiting for a worker.", executor.getQueueDepth());
+    gauge(out, "travelagency_executor_active_workers", "Workers running a transaction.",
+        executor.getActiveWorkers());
+
+    header(out, "travelagency_connection_pool_borrowed", "Pooled connections in use.", "gauge");
+    for (Database database : Database.values()) {
+      ConnectionPool pool = transactionManager.getConnectionPool(database);
+      sample(out, "travelagency_connection_pool_borrowed", label("database", database), pool.getBorrowed());
+    }
+    header(out, "travelagency_group_commits_total", "Database commits, each covering a batch of transactions.",
+        "counter");
+    for (GroupCommitter committer : transactionManager.getGroupCommitters()) {
+      sample(out, "travelagency_group_commits_total", label("database", committer.getDatabase()),
+          committer.getCommits());
+    }
+
+    header(out, "travelagency_search_cache_hits_total", "Searches answered from the cache.", "counter");
+    cacheSample(out, "travelagency_search_cache_hits_total", "flights", transactionManager.getFlightSearchCache(), true);
+    cacheSample(out, "travelagency_search_cache_hits_total", "hotels", transactionManager.getHotelSearchCache(), true);
+    header(out, "travelagency_search_cache_misses_total", "Searches run against the database.", "counter");
+    cacheSample(out, "travelagency_search_cache_misses_total", "flights", transactionManager.getFlightSearchCache(),
+        false);
+    cacheSample(out, "travelagency_search_cache_misses_total", "hotels", transactionManager.getHotelSearchCache(),
+        false);
+
+    header(out, "travelagency_queue_wait_seconds", "Time transactions waited for a worker.", "histogram");
+    histogram(out, "travelagency_queue_wait_seconds", "", executor.getQueueWait());
+    header(out, "travelagency_lock_wait_seconds", "Time operations waited on the concurrency control.", "histogram");
+    histogram(out, "travelagency_lock_wait_seconds", "", metrics.getLockWait());
+    header(out, "travelagency_operation_seconds", "Time operations took to run against the database.", "histogram");
+    for (Map.Entry<Table, Map<OperationType, Histogram>> table : metrics.getOperationTimes().entrySet()) {
+      for (Map.Entry<OperationType, Histogram> type : table.getValue().entrySet()) {
+        histogram(out, "travelagency_operation_seconds",
+            label("table", table.getKey()) + "," + label("type", type.getKey()), type.getValue());
+      }
+    }
+    header(out, "travelagency_commit_seconds", "Time two-phase commits took.", "histogram");
+    histogram(out, "travelagency_commit_seconds", "", metrics.getCommitTime());
+    header(out, "travelagency_rollback_seconds", "Time rollbacks took.", "histogram");
+    histogram(out, "travelagency_rollback_seconds", "", metrics.getRollbackTime());
+    header(out, "travelagency_transaction_seconds", "Time from the arrival of a transaction to its reply.",
+        "histogram");
+    histogram(out, "travelagency_transaction_seconds", label("outcome", "committed"),
+        metrics.getCommittedDuration());
+    histogram(out, "travelagency_transaction_seconds", label("outcome", "failed"), metrics.getFailedDuration());
+    return out.toString();
+  }
+
+  private static void header(StringBuilder out, String name, String help, String type) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void counter(StringBuilder out, String name, String help, long value) {
+    header(out, name, help, "counter");
+    sample(out, name, "", value);
+  }
+
+  private static void gauge(StringBuilder out, String name, String help, long value) {
+    header(out, name, help, "gauge");
+    sample(out, name, "", value);
+  }
+
+  private static void cacheSample(StringBuilder out, String name, String cache, SearchCache<?> searchCache,
+                                  boolean hits) {
+    sample(out, name, label("cache", cache), hits ? searchCache.getHits() : searchCache.getMisses());
+  }
+
+  /**
+   * Writes the cumulative buckets, then the sum and count. The count is taken from the last bucket so that the two
+   * agree even while durations are being recorded.
+   */
+  private static void histogram(StringBuilder out, String name, String labels, Histogram histogram) {
+    double[] bounds = Histogram.getBounds();
+    long[] counts = histogram.getCumulativeCounts();
+    String prefix = labels.isEmpty() ? "" : labels + ",";
+    for (int i = 0; i < bounds.length; i++) {
+      sample(out, name + "_bucket", prefix + label("le", Double.toString(bounds[i])), counts[i]);
+    }
+    sample(out, name + "_bucket", prefix + label("le", "+Inf"), counts[bounds.length]);
+    out.append(name).append("_sum").append(labels.isEmpty() ? "" : "{" + labels + "}")
+        .append(' ').append(histogram.getSumSeconds()).append('\n');
+    sample(out, name + "_count", labels, counts[bounds.length]);
+  }
+
+  private static void sample(StringBuilder out, String name, String labels, long value) {
+    out.append(name);
+    if (!labels.isEmpty()) {
+      out.append('{').append(labels).append('}');
+    }
+    out.append(' ').append(value).append('\n');
+  }
+
+  private static String label(String name, String value) {
+    return name + "=\"" + value + "\"";
+  }
+
+  private static String label(String name, Enum<?> value) {
+    return label(name, value.name().toLowerCase(Locale.ROOT));
+  }
+}
@@ -0,0 +1,202 @@
+package server;
+
+/**
+ * Converts operations from the legacy string form (an instruction, a table name and string parameters) to the typed
+ * form, parsing the parameters once so that nothing downstream has to.
+ */
+public class Operations {
+
+  private Operations() {
+  }
+
+  /**
+   * Returns the transaction with all of its operations typed.
+   *
+   * @throws IllegalArgumentException if an operation has an unknown instruction or malformed parameters
+   */
+  public static Transaction typed(Transaction transaction) {
+    boolean typed = true;
+    for (Operation operation : transaction.getOperationsList()) {
+      if (operation.getType() == OperationType.OPERATION_TYPE_UNSPECIFIED) {
+        typed = false;
+      } else {
+        check(operation);
+      }
+    }
+    if (typed) {
+      return transaction;
+    }
+    Transaction.Builder builder = transaction.toBuilder().clearOperations();
+    for (Operation operation : transaction.getOperationsList()) {
+      builder.addOperations(typed(operation));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns the operation in typed form. Operations on unknown tables keep an unspecified table.
+   *
+   * @throws IllegalArgumentException if the operation has an unknown instruction or malformed parameters, or is typed
+   *                                  with a row that does not match its table and type
+   */
+  public static Operation typed(Operation operation) {
+    if (operation.getType() != OperationType.OPERATION_TYPE_UNSPECIFIED) {
+      check(operation);
+      return operation;
+    }
+    OperationType type = type(operation.getInstruction());
+    Table table = table(operation.getVariable().getId());
+    OperationParameters parameters = operation.getParameters();
+    Operation.Builder builder = Operation.newBuilder().setType(type).setTable(table);
+
+    if (type == OperationType.READ) {
+      if (parameters.getParametersCount() > 1) {
+        throw new IllegalArgumentException();
+      }
+      if (parameters.getParametersCount() == 1) {
+        builder.setSearch(Search.newBuilder().setDestination(parameters.getParameters(0)));
+      }
+      return builder.build();
+    }
+
+    switch (table) {
+      case ROUTES:
+        if (type == OperationType.WRITE) {
+          checkCount(parameters, 3);
+          builder.setRoute(RouteRow.newBuilder().setId(Integer.parseInt(parameters.getParameters(0)))
+              .setSource(parameters.getParameters(1))
+              .setDestination(parameters.getParameters(2)));
+        } else {
+          checkCount(parameters, 1);
+          builder.setRoute(RouteRow.newBuilder().setId(Integer.parseInt(parameters.getParameters(0))));
+        }
+        break;
+      case FLIGHTS:
+        checkCount(parameters, 3);
+        builder.setFlight(FlightRow.newBuilder().setRouteId(Integer.parseInt(parameters.getParameters(0)))
+            .setDeparture(Long.parseLong(parameters.getParameters(1)))
+            .setArrival(Long.parseLong(parameters.getParameters(2))));
+        break;
+      case USERS:
+        if (type == OperationType.WRITE) {
+          checkCount(parameters, 3);
+          builder.setUser(UserRow.newBuilder().setId(Integer.parseInt(parameters.getParameters(0)))
+              .setName(parameters.getParameters(1))
+              .setAge(Integer.parseInt(parameters.getParameters(2))));
+        } else {
+          checkCount(parameters, 1);
+          builder.setUser(UserRow.newBuilder().setId(Integer.parseInt(parameters.getParameters(0))));
+        }
+        break;
+      case HOTEL_RESERVATIONS:
+        if (type == OperationType.WRITE) {
+          checkCount(parameters, 5);
+          builder.setHotelReservation(HotelReservationRow.newBuilder()
+              .setUserId(Integer.parseInt(parameters.getParameters(0)))
+              .setHotelId(Integer.parseInt(parameters.getParameters(1)))
+              .setArrival(Long.parseLong(parameters.getParameters(2)))
+              .setDeparture(Long.parseLong(parameters.getParameters(3)))
+              .setNoRooms(Integer.parseInt(parameters.getParameters(4))));
+        } else {
+          checkCount(parameters, 2);
+          builder.setHotelReservation(HotelReservationRow.newBuilder()
+              .setUserId(Integer.parseInt(parameters.getParameters(0)))
+              .setHotelId(Integer.parseInt(parameters.getParameters(1))));
+        }
+        break;
+      default:
+        // Hotels are read only and unknown tables are ignored
+        break;
+    }
+    return builder.build();
+  }
+
+  /**
+   * Checks that a typed operation carries the row its table and type call for: the row is what it is locked by, and the
+   * table what it is run against, so the two must agree. Reads carry at most a search, writes and deletes of the
+   * writable tables carry a row of their table, and writes of the other tables, which are ignored, carry none.
+   */
+  private static void check(Operation operation) {
+    Operation.RowCase row = operation.getRowCase();
+    if (operation.getType() == OperationType.READ) {
+      if (row != Operation.RowCase.SEARCH && row != Operation.RowCase.ROW_NOT_SET) {
+        throw new IllegalArgumentException("Read of " + operation.getTable() + " with a " + row + " row");
+      }
+      return;
+    }
+    if (operation.getType() != OperationType.WRITE && operation.getType() != OperationType.DELETE) {
+      throw new IllegalArgumentException("Unknown operation type " + operation.getType());
+    }
+    if (row != rowCase(operation.getTable())) {
+      throw new IllegalArgumentException(operation.getType() + " of " + operation.getTable() + " with a " + row + " row");
+    }
+  }
+
+  private static Operation.RowCase rowCase(Table table) {
+    switch (table) {
+      case ROUTES:
+        return Operation.RowCase.ROUTE;
+      case FLIGHTS:
+        return Operation.RowCase.FLIGHT;
+      case USERS:
+        return Operation.RowCase.USER;
+      case HOTEL_RESERVATIONS:
+        return Operation.RowCase.HOTELRESERVATION;
+      default:
+        return Operation.RowCase.ROW_NOT_SET;
+    }
+  }
+
+  public static String tableName(Table table) {
+    switch (table) {
+      case ROUTES:
+        return "routes";
+      case FLIGHTS:
+        return "flights";
+      case HOTELS:
+        return "hotels";
+      case USERS:
+        return "users";
+      case HOTEL_RESERVATIONS:
+        return "hotel_reservations";
+      default:
+        return null;
+    }
+  }
+
+  private static Table table(String name) {
+    switch (name) {
+      case "routes":
+        return Table.ROUTES;
+      case "flights":
+        return Table.FLIGHTS;
+      case "hotels":
+        return Table.HOTELS;
+      case "users":
+        return Table.USERS;
+      case "hotel_reservations":
+        return Table.HOTEL_RESERVATIONS;
+      default:
+        return Table.TABLE_UNSPECIFIED;
+    }
+  }
+
+  private static OperationType type(String instruction) {
+    switch (instruction) {
+      case "R":
+        return OperationType.READ;
+      case "W":
+        return OperationType.WRITE;
+      case "D":
+        return OperationType.DELETE;
+      default:
+        throw new IllegalArgumentException("Unknown instruction " + instruction);
+    }
+  }
+
+  private static void checkCount(OperationParameters parameters, int count) {
+    if (parameters.getParametersCount() != count) {
+      throw new IllegalArgumentException();
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package server;
+
+import data.airlines.Flight;
+import data.hotels.Hotel;
+import data.users.User;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Converts the rows read from the databases to the records sent back to clients.
+ */
+public class Records {
+
+  public static ReadResult flights(List<Flight> flights) {
+    ReadResult.Builder result = ReadResult.newBuilder().setTable(Table.FLIGHTS);
+    for (Flight flight : flights) {
+      result.addFlights(FlightRecord.newBuilder()
+          .setRouteId(flight.getRoute().getId())
+          .setSource(nullToEmpty(flight.getRoute().getSource()))
+          .setDestination(nullToEmpty(flight.getRoute().getDestination()))
+          .setDeparture(epochMillis(flight.getDeparture()))
+          .setArrival(epochMillis(flight.getArrival())));
+    }
+    return result.build();
+  }
+
+  public static ReadResult hotels(List<Hotel> hotels) {
+    ReadResult.Builder result = ReadResult.newBuilder().setTable(Table.HOTELS);
+    for (Hotel hotel : hotels) {
+      result.addHotels(HotelRecord.newBuilder()
+          .setId(hotel.getId())
+          .setName(nullToEmpty(hotel.getName()))
+          .setCity(nullToEmpty(hotel.getCity()))
+          .setAddress(nullToEmpty(hotel.getAddress()))
+          .setStars(hotel.getStars())
+          .setCapacity(hotel.getCapacity()));
+    }
+    return result.build();
+  }
+
+  public static ReadResult users(List<User> users) {
+    ReadResult.Builder result = ReadResult.newBuilder().setTable(Table.USERS);
+    for (User user : users) {
+      result.addUsers(UserRecord.newBuilder()
+          .setId(user.getId())
+          .setName(nullToEmpty(user.getName()))
+          .setAge(user.getAge()));
+    }
+    return result.build();
+  }
+
+  /**
+   * Returns the number of rows of the result, whatever its table.
+   */
+  public static int size(ReadResult result) {
+    return result.getFlightsCount() + result.getHotelsCount() + result.getUsersCount();
+  }
+
+  // Protobuf strings cannot be null; a missing time is sent as 0
+  private static String nullToEmpty(String value) {
+    return value == null ? "" : value;
+  }
+
+  private static long epochMillis(Timestamp timestamp) {
+    return timestamp == null ? 0 : timestamp.getTime();
+  }
+}
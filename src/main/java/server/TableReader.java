@@ -0,0 +1,150 @@
+package server;
+
+import data.ConnectionPool;
+import data.Database;
+import data.OperationException;
+import data.Page;
+import data.PooledConnection;
+import data.airlines.AirlinesManager;
+import data.airlines.Flight;
+import data.hotels.Hotel;
+import data.hotels.HotelsManager;
+import data.users.User;
+import data.users.UsersManager;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import transactionmanager.TransactionManager;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams a table to the client a page at a time. The next page is only read once the transport can take it, so a
+ * slow client holds back the reads instead of having the pages buffered for it: at most one page is in memory.
+ */
+class TableReader implements Runnable {
+
+  static final int DEFAULT_PAGE_SIZE = 100;
+  static final int MAX_PAGE_SIZE = 1000;
+
+  private final ConnectionPool pool;
+  private final Table table;
+  private final int pageSize;
+  private final ServerCallStreamObserver<ReadReply> responseObserver;
+
+  // Counts the wake-ups since the last drain, so that only one thread reads at a time and no wake-up is lost
+  private final AtomicInteger wakeUps = new AtomicInteger();
+  private volatile boolean cancelled;
+  private long lastKey;
+  private boolean done;
+
+  private TableReader(ConnectionPool pool, ReadRequest request, ServerCallStreamObserver<ReadReply> responseObserver) {
+    this.pool = pool;
+    this.table = request.getTable();
+    this.pageSize = request.getPageSize() == 0 ? DEFAULT_PAGE_SIZE : Math.min(request.getPageSize(), MAX_PAGE_SIZE);
+    this.lastKey = request.getAfter();
+    this.responseObserver = responseObserver;
+  }
+
+  static void read(TransactionManager transactionManager, ReadRequest request,
+                   StreamObserver<ReadReply> responseObserver) {
+    Database database = databaseOf(request.getTable());
+    if (database == null) {
+      responseObserver.onError(Status.INVALID_ARGUMENT
+          .withDescription("Table " + request.getTable() + " cannot be read").asRuntimeException());
+      return;
+    }
+    if (request.getPageSize() < 0) {
+      responseObserver.onError(Status.INVALID_ARGUMENT
+          .withDescription("Negative page size " + request.getPageSize()).asRuntimeException());
+      return;
+    }
+    ServerCallStreamObserver<ReadReply> serverObserver = (ServerCallStreamObserver<ReadReply>) responseObserver;
+    TableReader reader = new TableReader(transactionManager.getConnectionPool(database), request, serverObserver);
+    serverObserver.setOnCancelHandler(() -> reader.cancelled = true);
+    serverObserver.setOnReadyHandler(reader);
+    // The call may have become ready before the handler was set
+    reader.run();
+  }
+
+  private static Database databaseOf(Table table) {
+    switch (table) {
+      case FLIGHTS:
+        return Database.AIRLINES;
+      case HOTELS:
+        return Database.HOTELS;
+      case USERS:
+        return Database.USERS;
+      default:
+        return null;
+    }
+  }
+
+  @Override
+  public void run() {
+    if (wakeUps.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    do {
+      drain();
+      missed = wakeUps.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  private void drain() {
+    while (!done && !cancelled && responseObserver.isReady()) {
+      Page<?> page;
+      try {
+        page = readPage();
+      } catch (OperationException e) {
+        done = true;
+        responseObserver.onError(Status.INTERNAL.withDescription(e.getMessage()).asRuntimeException());
+        return;
+      }
+      lastKey = page.getLastKey();
+      if (!page.getRows().isEmpty()) {
+        responseObserver.onNext(ReadReply.newBuilder().setResult(records(page)).setLastKey(lastKey).build());
+      }
+      if (page.isLast()) {
+        done = true;
+        responseObserver.onCompleted();
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private ReadResult records(Page<?> page) {
+    switch (table) {
+      case FLIGHTS:
+        return Records.flights((List<Flight>) page.getRows());
+      case HOTELS:
+        return Records.hotels((List<Hotel>) page.getRows());
+      default:
+        return Records.users((List<User>) page.getRows());
+    }
+  }
+
+  private Page<?> readPage() throws OperationException {
+    PooledConnection connection;
+    try {
+      connection = pool.borrow();
+    } catch (SQLException e) {
+      throw new OperationException(e.getMessage());
+    }
+    try {
+      switch (table) {
+        case FLIGHTS:
+          return new AirlinesManager(connection).getFlightsPage(lastKey, pageSize);
+        case HOTELS:
+          return new HotelsManager(connection).getHotelsPage(lastKey, pageSize);
+        default:
+          return new UsersManager(connection).getUsersPage(lastKey, pageSize);
+      }
+    } finally {
+      pool.release(connection);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package server;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import transactionmanager.TransactionManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Receives the transactions of one bidirectional stream. Every transaction is handed to the transaction manager as soon
+ * as it arrives and its reply, tagged with its id, is written back as soon as it finishes. The stream is completed once
+ * the client is done sending and every transaction it sent replied.
+ */
+public class TransactionStream implements StreamObserver<Transaction> {
+
+  private final TransactionManager transactionManager;
+  private final StreamObserver<TransactionReply> responseObserver;
+  // The open request stream counts as one, so the responses are not completed before the client is done sending
+  private final AtomicInteger pending = new AtomicInteger(1);
+  // gRPC observers are not thread safe
+  private final ReentrantLock responseLock = new ReentrantLock();
+  private boolean cancelled;
+
+  public TransactionStream(TransactionManager transactionManager, StreamObserver<TransactionReply> responseObserver) {
+    this.transactionManager = transactionManager;
+    this.responseObserver = responseObserver;
+    ((ServerCallStreamObserver<TransactionReply>) responseObserver).setOnCancelHandler(this::cancel);
+  }
+
+  @Override
+  public void onNext(Transaction transaction) {
+    pending.incrementAndGet();
+    transactionManager.addTransaction(transaction, new StreamObserver<TransactionReply>() {
+      @Override
+      public void onNext(TransactionReply reply) {
+        reply(reply.toBuilder().setTransactionId(transaction.getId()).build());
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        onNext(BatchReplies.errorReply(t));
+        onCompleted();
+      }
+
+      @Override
+      public void onCompleted() {
+        finished();
+      }
+    });
+  }
+
+  /**
+   * The client went away: the transactions it sent still run, but their replies are dropped.
+   */
+  @Override
+  public void onError(Throwable t) {
+    System.err.println("Transaction stream failed: " + t.getMessage());
+    cancel();
+  }
+
+  @Override
+  public void onCompleted() {
+    finished();
+  }
+
+  private void cancel() {
+    responseLock.lock();
+    try {
+      cancelled = true;
+    } finally {
+      responseLock.unlock();
+    }
+  }
+
+  private void reply(TransactionReply reply) {
+    responseLock.lock();
+    try {
+      if (!cancelled) {
+        responseObserver.onNext(reply);
+      }
+    } finally {
+      responseLock.unlock();
+    }
+  }
+
+  private void finished() {
+    if (pending.decrementAndGet() != 0) {
+      return;
+    }
+    responseLock.lock();
+    try {
+      if (!cancelled) {
+        responseObserver.onCompleted();
+      }
+    } finally {
+      responseLock.unlock();
+    }
+  }
+}
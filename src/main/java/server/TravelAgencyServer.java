@@ -2,6 +2,7 @@ package server;
 
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import transactionmanager.TransactionManager;
 
@@ -14,6 +15,7 @@ public class TravelAgencyServer {
 
   private TransactionManager transactionManager;
   private Server server;
+  private MetricsServer metricsServer;
 
   public TravelAgencyServer(TransactionManager transactionManager) {
     this.transactionManager = transactionManager;
@@ -22,11 +24,13 @@ public class TravelAgencyServer {
   private void start() throws IOException {
     /* The port on which the server should run */
     int port = 50051;
-    server = ServerBuilder.forPort(port)
-        .addService(new TransactionHandlerImpl())
-        .build()
-        .start();
+    start(ServerBuilder.forPort(port));
     logger.info("Server started, listening on " + port);
+    metricsServer = MetricsServer.fromSystemProperty(transactionManager);
+    if (metricsServer != null) {
+      metricsServer.start();
+      logger.info("Metrics served on http://localhost:" + metricsServer.getPort() + "/metrics");
+    }
     Runtime.getRuntime().addShutdownHook(new Thread(() -> {
       // Use stderr here since the logger may have been reset by its JVM shutdown hook.
       System.err.println("*** shutting down gRPC server since JVM is shutting down");
@@ -35,10 +39,24 @@ public class TravelAgencyServer {
     }));
   }
 
-  private void stop() {
+  /**
+   * Serves the transaction handler on the given builder, which lets benchmarks run the server on an in-process
+   * transport.
+   */
+  void start(ServerBuilder<?> serverBuilder) throws IOException {
+    server = serverBuilder
+        .addService(new TransactionHandlerImpl())
+        .build()
+        .start();
+  }
+
+  void stop() {
     if (server != null) {
       server.shutdown();
     }
+    if (metricsServer != null) {
+      metricsServer.stop();
+    }
   }
 
   /**
@@ -53,7 +71,42 @@ public class TravelAgencyServer {
   class TransactionHandlerImpl extends TransactionHandlerGrpc.TransactionHandlerImplBase {
     @Override
     public void sendTransaction(TransactionRequest req, StreamObserver<TransactionReply> responseObserver) {
-      TravelAgencyServer.this.transactionManager.addTransaction(req.getTransaction(0), responseObserver);
+      if (req.getTransactionCount() == 0) {
+        responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("No transaction to run").asRuntimeException());
+        return;
+      }
+      if (req.getTransactionCount() == 1) {
+        TravelAgencyServer.this.transactionManager.addTransaction(req.getTransaction(0), responseObserver);
+        return;
+      }
+      addTransactions(req, BatchReplies.aggregated(responseObserver, req.getTransactionCount()));
+    }
+
+    @Override
+    public void sendTransactions(TransactionRequest req, StreamObserver<TransactionReply> responseObserver) {
+      if (req.getTransactionCount() == 0) {
+        responseObserver.onCompleted();
+        return;
+      }
+      addTransactions(req, BatchReplies.streamed(responseObserver, req.getTransactionCount()));
+    }
+
+    @Override
+    public StreamObserver<Transaction> streamTransactions(StreamObserver<TransactionReply> responseObserver) {
+      return new TransactionStream(TravelAgencyServer.this.transactionManager, responseObserver);
+    }
+
+    @Override
+    public void readTable(ReadRequest req, StreamObserver<ReadReply> responseObserver) {
+      TableReader.read(TravelAgencyServer.this.transactionManager, req, responseObserver);
+    }
+
+    private void addTransactions(TransactionRequest req, BatchReplies replies) {
+      for (int i = 0; i < req.getTransactionCount(); i++) {
+        Transaction transaction = req.getTransaction(i);
+        TravelAgencyServer.this.transactionManager.addTransaction(transaction,
+            replies.forTransaction(i, transaction.getId()));
+      }
     }
   }
 
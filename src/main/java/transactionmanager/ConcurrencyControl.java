@@ -0,0 +1,52 @@
+package transactionmanager;
+
+import server.Operation;
+
+/**
+ * Schedules the operations of concurrent transactions. The mode is chosen per deployment with the
+ * {@value #MODE_PROPERTY} system property: {@code locking} (the default) or {@code timestamp}.
+ */
+public interface ConcurrencyControl {
+
+  String MODE_PROPERTY = "transactionmanager.concurrency";
+
+  /**
+   * Called before the operation runs. Blocks while the operation has to wait for other transactions.
+   *
+   * @throws TransactionAbortedException if the transaction has to be rolled back and restarted
+   */
+  void beforeOperation(RunningTransaction transaction, Operation operation)
+      throws InterruptedException, TransactionAbortedException;
+
+  /**
+   * Called once the transaction committed, or its rollback did.
+   */
+  void finish(RunningTransaction transaction);
+
+  /**
+   * How long to wait before restarting an aborted attempt, so that it does not run into the same conflict again.
+   */
+  default long restartDelayMillis(RunningTransaction transaction) {
+    return 0;
+  }
+
+  long getAborts();
+
+  /**
+   * Stops the threads of the concurrency control, once no transaction runs anymore.
+   */
+  default void shutdown() throws InterruptedException {
+  }
+
+  static ConcurrencyControl fromSystemProperty() {
+    String mode = System.getProperty(MODE_PROPERTY, "locking");
+    switch (mode) {
+      case "locking":
+        return new TwoPhaseLocking();
+      case "timestamp":
+        return new TimestampOrdering();
+      default:
+        throw new IllegalArgumentException("Unknown concurrency control mode " + mode);
+    }
+  }
+}
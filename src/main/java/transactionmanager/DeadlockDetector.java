@@ -0,0 +1,136 @@
+package transactionmanager;
+
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Looks for cycles in the waits-for graph of the {@link LockManager}. Detection runs as soon as a transaction starts
+ * waiting for a lock and, as a safety net, periodically. Of every cycle found, the transaction that executed the
+ * fewest operations (the youngest one on ties) is aborted, so it can be rolled back and restarted.
+ */
+public class DeadlockDetector implements Runnable {
+
+  private static final Logger logger = Logger.getLogger(DeadlockDetector.class.getName());
+
+  private static final long DETECTION_INTERVAL_MILLIS = 100;
+
+  private static final Comparator<RunningTransaction> VICTIM_ORDER =
+      Comparator.comparingInt(RunningTransaction::getOperationsExecuted)
+          .thenComparing(Comparator.comparingLong(RunningTransaction::getStartTime).reversed());
+
+  private final LockManager lockManager;
+  private final Semaphore pendingWaits = new Semaphore(0);
+  private Thread thread;
+
+  private final AtomicLong victims = new AtomicLong();
+  private final AtomicLong totalDetectionLatency = new AtomicLong();
+  private final AtomicLong maxDetectionLatency = new AtomicLong();
+
+  public DeadlockDetector(LockManager lockManager) {
+    this.lockManager = lockManager;
+    lockManager.setWaitListener(this::wakeUp);
+  }
+
+  public void start() {
+    thread = new Thread(this, "deadlock-detector");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public void stop() throws InterruptedException {
+    if (thread != null) {
+      thread.interrupt();
+      thread.join();
+    }
+  }
+
+  public void wakeUp() {
+    if (pendingWaits.availablePermits() == 0) {
+      pendingWaits.release();
+    }
+  }
+
+  @Override
+  public void run() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        pendingWaits.tryAcquire(DETECTION_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        pendingWaits.drainPermits();
+      } catch (InterruptedException e) {
+        return;
+      }
+      detectDeadlocks();
+    }
+  }
+
+  public void detectDeadlocks() {
+    List<RunningTransaction> cycle;
+    while ((cycle = findCycle(lockManager.waitsForGraph())) != null) {
+      long cycleStart = Long.MIN_VALUE;
+      for (RunningTransaction transaction : cycle) {
+        cycleStart = Math.max(cycleStart, lockManager.waitingSince(transaction));
+      }
+
+      RunningTransaction victim = Collections.min(cycle, VICTIM_ORDER);
+      if (lockManager.abort(victim)) {
+        long latency = System.nanoTime() - cycleStart;
+        victims.incrementAndGet();
+        totalDetectionLatency.addAndGet(latency);
+        maxDetectionLatency.accumulateAndGet(latency, Math::max);
+        if (logger.isLoggable(Level.FINE)) {
+          logger.fine("Deadlock between " + cycle + " detected after " +
+              TimeUnit.NANOSECONDS.toMicros(latency) + "us, aborting " + victim);
+        }
+      }
+    }
+  }
+
+  private List<RunningTransaction> findCycle(Map<RunningTransaction, Set<RunningTransaction>> graph) {
+    Set<RunningTransaction> visited = new HashSet<>();
+    for (RunningTransaction start : graph.keySet()) {
+      if (visited.contains(start)) {
+        continue;
+      }
+      List<RunningTransaction> path = new ArrayList<>();
+      Deque<Iterator<RunningTransaction>> stack = new ArrayDeque<>();
+      path.add(start);
+      visited.add(start);
+      stack.push(graph.get(start).iterator());
+      while (!stack.isEmpty()) {
+        Iterator<RunningTransaction> successors = stack.peek();
+        if (!successors.hasNext()) {
+          stack.pop();
+          path.remove(path.size() - 1);
+          continue;
+        }
+        RunningTransaction next = successors.next();
+        int index = path.indexOf(next);
+        if (index >= 0) {
+          return new ArrayList<>(path.subList(index, path.size()));
+        }
+        if (visited.add(next) && graph.containsKey(next)) {
+          path.add(next);
+          stack.push(graph.get(next).iterator());
+        }
+      }
+    }
+    return null;
+  }
+
+  public long getVictims() {
+    return victims.get();
+  }
+
+  public double getAverageDetectionLatencyMillis() {
+    long count = victims.get();
+    return count == 0 ? 0 : totalDetectionLatency.get() / 1e6 / count;
+  }
+
+  public double getMaxDetectionLatencyMillis() {
+    return maxDetectionLatency.get() / 1e6;
+  }
+}
@@ -0,0 +1,7 @@
+package transactionmanager;
+
+public class DeadlockException extends TransactionAbortedException {
+  public DeadlockException(String s) {
+    super(s);
+  }
+}
@@ -0,0 +1,390 @@
+package transactionmanager;
+
+import data.Database;
+import data.OperationException;
+import data.PooledConnection;
+import server.Operation;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Owns the single writer connection of a database, which runs with autocommit off. Transactions keep their writes to
+ * themselves until they commit, and then hand them to the committer thread. The committer applies the writes of every
+ * transaction that asked for a commit since the previous one, each transaction in its own savepoint so that a failing
+ * one is rolled back alone, and logs the applied operations. It then stores the last LSN of the
+ * {@link WriteAheadLog} in the database, forces the log up to it and commits, so a whole batch of transactions pays for
+ * a single fsync while the database only ever holds the writes of transactions that asked to commit.
+ */
+public class GroupCommitter implements Runnable {
+
+  /**
+   * Applies a write on the writer connection and returns its inverse, or null if it changed nothing.
+   */
+  public interface OperationApplier {
+    Operation apply(PooledConnection connection, Operation operation) throws OperationException;
+  }
+
+  // Queued by stop() behind the pending requests, so that the committer commits them before it exits
+  private static final Request STOP = new Request(null, Collections.emptyList(), false, null);
+
+  private final Database database;
+  private final PooledConnection connection;
+  private final WriteAheadLog log;
+  private final OperationApplier applier;
+  private final ReentrantLock statementLock = new ReentrantLock();
+  private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+  private Thread thread;
+  private volatile boolean stopping;
+
+  private final LongAdder commits = new LongAdder();
+  private final LongAdder committedRequests = new LongAdder();
+
+  public GroupCommitter(Database database, PooledConnection connection, WriteAheadLog log, OperationApplier applier)
+      throws SQLException {
+    this.database = database;
+    this.connection = connection;
+    this.log = log;
+    this.applier = applier;
+    // tm_checkpoint is created by the schema migrations
+    connection.getConnection().setAutoCommit(false);
+  }
+
+  public void start() {
+    thread = new Thread(this, "group-committer-" + database.name().toLowerCase());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Commits what was asked for so far, stops the committer thread and closes the writer connection. The committer is
+   * not interrupted, since an interrupt would close the log file in the middle of a force.
+   */
+  public void stop() throws InterruptedException {
+    stopping = true;
+    if (thread != null) {
+      requests.add(STOP);
+      thread.join();
+    }
+    List<Request> late = new ArrayList<>();
+    requests.drainTo(late);
+    for (Request request : late) {
+      IllegalStateException stopped = new IllegalStateException("Group committer of " + database + " stopped");
+      request.result.completeExceptionally(stopped);
+      request.finished.completeExceptionally(stopped);
+    }
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      System.err.println(e);
+    }
+  }
+
+  public PooledConnection getConnection() {
+    return connection;
+  }
+
+  /**
+   * Gives the calling thread exclusive use of the writer connection. Callers must leave the connection as they found
+   * it, since the committer commits whatever it holds.
+   */
+  public void lock() {
+    statementLock.lock();
+  }
+
+  public void unlock() {
+    statementLock.unlock();
+  }
+
+  /**
+   * Returns the LSN of the last log record contained in the database. Callers must hold the lock.
+   */
+  public long readCheckpoint() throws SQLException {
+    ResultSet rs = connection.prepareStatement("SELECT lsn FROM tm_checkpoint").executeQuery();
+    try {
+      return rs.next() ? rs.getLong(1) : 0;
+    } finally {
+      rs.close();
+    }
+  }
+
+  public void writeCheckpoint(long lsn) throws SQLException {
+    PreparedStatement statement = connection.prepareStatement("UPDATE tm_checkpoint SET lsn = ?");
+    statement.setLong(1, lsn);
+    statement.executeUpdate();
+  }
+
+  /**
+   * Asks for the writes of the transaction to be applied and committed, together with its commit record if
+   * {@code logCommit} is set. The returned future completes with the inverses of the applied operations once they are
+   * durable, or exceptionally if one of them failed, in which case none of them was applied.
+   */
+  public CompletableFuture<List<Operation>> commit(String transactionId, List<Operation> operations,
+                                                   boolean logCommit) {
+    return submit(new Request(transactionId, operations, logCommit, null)).result;
+  }
+
+  /**
+   * Asks for the writes of a transaction that spans several databases to be applied and logged, and then held
+   * uncommitted until the decision completes: with true they are committed, with false rolled back and compensated in
+   * the log. The committer waits for the decision without committing anything else. The result of the returned
+   * request completes once the writes are prepared, with their inverses, and {@link Request#getFinished()} once the
+   * decision was carried out.
+   */
+  public Request prepare(String transactionId, List<Operation> operations, CompletableFuture<Boolean> decision) {
+    return submit(new Request(transactionId, operations, false, decision));
+  }
+
+  private Request submit(Request request) {
+    if (stopping) {
+      IllegalStateException stopped = new IllegalStateException("Group committer of " + database + " stopped");
+      request.result.completeExceptionally(stopped);
+      request.finished.completeExceptionally(stopped);
+      return request;
+    }
+    requests.add(request);
+    return request;
+  }
+
+  @Override
+  public void run() {
+    List<Request> batch = new ArrayList<>();
+    List<Request> applied = new ArrayList<>();
+    boolean stopped = false;
+    while (!stopped) {
+      try {
+        batch.add(requests.take());
+      } catch (InterruptedException e) {
+        return;
+      }
+      requests.drainTo(batch);
+      stopped = batch.remove(STOP);
+      if (batch.isEmpty()) {
+        continue;
+      }
+
+      statementLock.lock();
+      try {
+        for (Request request : batch) {
+          if (request.decision != null) {
+            // The prepared writes stay uncommitted until the decision, so everything before them commits first
+            commitApplied(applied);
+            prepare(request);
+            continue;
+          }
+          Savepoint savepoint = apply(request);
+          if (savepoint != null && release(request, savepoint)) {
+            applied.add(request);
+          }
+        }
+        commitApplied(applied);
+      } finally {
+        statementLock.unlock();
+      }
+      batch.clear();
+    }
+  }
+
+  private void prepare(Request request) {
+    Savepoint savepoint = apply(request);
+    if (savepoint == null) {
+      request.finished.complete(null);
+      return;
+    }
+    request.result.complete(request.inverses);
+    if (request.decision.join()) {
+      if (release(request, savepoint)) {
+        commitApplied(new ArrayList<>(Collections.singletonList(request)));
+      } else {
+        request.finished.completeExceptionally(new IllegalStateException(
+            "Releasing the prepared writes of " + request.transactionId + " failed"));
+      }
+      return;
+    }
+    rollback(savepoint);
+    try {
+      // Recovery undoes no operation of an aborted transaction that is compensated in the log
+      for (Operation operation : request.operations) {
+        log.appendCompensation(request.transactionId, database, operation);
+      }
+    } catch (IOException e) {
+      System.err.println("Logging the abort of " + request.transactionId + " failed: " + e.getMessage());
+    }
+    request.finished.complete(null);
+  }
+
+  /**
+   * Stores the checkpoint, forces the log and commits the writes of the applied requests, then completes them.
+   */
+  private void commitApplied(List<Request> applied) {
+    if (applied.isEmpty()) {
+      return;
+    }
+    try {
+      long lsn = log.getLastLsn();
+      writeCheckpoint(lsn);
+      log.force(lsn);
+      connection.getConnection().commit();
+      commits.increment();
+      committedRequests.add(applied.size());
+      for (Request request : applied) {
+        request.result.complete(request.inverses);
+        request.finished.complete(null);
+      }
+      checkpointed(lsn);
+    } catch (SQLException | IOException e) {
+      System.err.println("Group commit on " + database + " failed: " + e.getMessage());
+      rollback();
+      logAborts(applied);
+      for (Request request : applied) {
+        request.result.completeExceptionally(e);
+        request.finished.completeExceptionally(e);
+      }
+    }
+    applied.clear();
+  }
+
+  /**
+   * The commit records of the requests may already be durable, so recovery is told that this database rolled them back
+   * before the clients are.
+   */
+  private void logAborts(List<Request> requests) {
+    try {
+      long lsn = 0;
+      for (Request request : requests) {
+        lsn = log.appendAbort(request.transactionId, database);
+      }
+      log.force(lsn);
+    } catch (IOException e) {
+      System.err.println("Logging the rollback of a group commit on " + database + " failed: " + e.getMessage());
+    }
+  }
+
+  private void checkpointed(long lsn) {
+    try {
+      log.checkpointed(database, lsn);
+    } catch (IOException e) {
+      System.err.println("Truncating " + log.getPath() + " failed: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Applies the operations of the request in a savepoint and logs them once all of them succeeded, so that a failed
+   * request leaves neither changes nor log records behind. Returns the savepoint, still open, or null after failing
+   * the request.
+   */
+  private Savepoint apply(Request request) {
+    Connection jdbcConnection = connection.getConnection();
+    Savepoint savepoint;
+    try {
+      savepoint = jdbcConnection.setSavepoint();
+    } catch (SQLException e) {
+      request.result.completeExceptionally(e);
+      return null;
+    }
+    try {
+      List<Operation> inverses = new ArrayList<>();
+      for (Operation operation : request.operations) {
+        inverses.add(applier.apply(connection, operation));
+      }
+      for (int i = 0; i < inverses.size(); i++) {
+        log.appendOperation(request.transactionId, database, request.operations.get(i), inverses.get(i));
+      }
+      if (request.logCommit) {
+        log.appendCommit(request.transactionId);
+      }
+      inverses.removeIf(inverse -> inverse == null);
+      request.inverses = inverses;
+      return savepoint;
+    } catch (OperationException | IOException e) {
+      rollback(savepoint);
+      request.result.completeExceptionally(e);
+      return null;
+    }
+  }
+
+  private boolean release(Request request, Savepoint savepoint) {
+    try {
+      connection.getConnection().releaseSavepoint(savepoint);
+      return true;
+    } catch (SQLException e) {
+      rollback(savepoint);
+      request.result.completeExceptionally(e);
+      return false;
+    }
+  }
+
+  private void rollback(Savepoint savepoint) {
+    try {
+      connection.getConnection().rollback(savepoint);
+      connection.getConnection().releaseSavepoint(savepoint);
+    } catch (SQLException e) {
+      System.err.println("Rollback on " + database + " failed: " + e.getMessage());
+    }
+  }
+
+  private void rollback() {
+    try {
+      connection.getConnection().rollback();
+    } catch (SQLException e) {
+      System.err.println("Rollback on " + database + " failed: " + e.getMessage());
+    }
+  }
+
+  public Database getDatabase() {
+    return database;
+  }
+
+  public long getCommits() {
+    return commits.sum();
+  }
+
+  public double getAverageBatchSize() {
+    long count = commits.sum();
+    return count == 0 ? 0 : (double) committedRequests.sum() / count;
+  }
+
+  /**
+   * A transaction's writes queued for the committer.
+   */
+  public static class Request {
+    private final String transactionId;
+    private final List<Operation> operations;
+    private final boolean logCommit;
+    private final CompletableFuture<Boolean> decision;
+    private final CompletableFuture<List<Operation>> result = new CompletableFuture<>();
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+    private List<Operation> inverses;
+
+    private Request(String transactionId, List<Operation> operations, boolean logCommit,
+                    CompletableFuture<Boolean> decision) {
+      this.transactionId = transactionId;
+      this.operations = operations;
+      this.logCommit = logCommit;
+      this.decision = decision;
+    }
+
+    public CompletableFuture<List<Operation>> getResult() {
+      return result;
+    }
+
+    /**
+     * Completes once the writes were committed or, for a prepared request, the decision was carried out.
+     */
+    public CompletableFuture<Void> getFinished() {
+      return finished;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package transactionmanager;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations over fixed buckets, laid out the way Prometheus expects them: every bucket counts
+ * the durations up to its upper bound, the last one has no bound, and the sum and count of all durations are kept.
+ */
+public class Histogram {
+
+  /**
+   * Upper bounds in seconds, from 50 microseconds, below a single SQLite statement, up to 10 seconds.
+   */
+  private static final double[] BOUNDS = {
+      0.00005, 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+  private static final long[] BOUND_NANOS = new long[BOUNDS.length];
+
+  static {
+    for (int i = 0; i < BOUNDS.length; i++) {
+      BOUND_NANOS[i] = (long) (BOUNDS[i] * 1e9);
+    }
+  }
+
+  private final LongAdder[] counts = new LongAdder[BOUNDS.length + 1];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sumNanos = new LongAdder();
+
+  public Histogram() {
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = new LongAdder();
+    }
+  }
+
+  public void record(long nanos) {
+    int bucket = 0;
+    while (bucket < BOUND_NANOS.length && nanos > BOUND_NANOS[bucket]) {
+      bucket++;
+    }
+    counts[bucket].increment();
+    count.increment();
+    sumNanos.add(nanos);
+  }
+
+  /**
+   * Records the time elapsed since the given {@link System#nanoTime()}.
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  public static double[] getBounds() {
+    return BOUNDS.clone();
+  }
+
+  /**
+   * The number of durations up to each bound, with all the durations last, for the bucket without a bound.
+   */
+  public long[] getCumulativeCounts() {
+    long[] cumulative = new long[counts.length];
+    long total = 0;
+    for (int i = 0; i < counts.length; i++) {
+      total += counts[i].sum();
+      cumulative[i] = total;
+    }
+    return cumulative;
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public double getSumSeconds() {
+    return sumNanos.sum() / 1e9;
+  }
+}
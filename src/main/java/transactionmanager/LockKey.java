@@ -0,0 +1,58 @@
+package transactionmanager;
+
+import java.util.Objects;
+
+/**
+ * A lockable resource: either a whole table or a single row of it, identified by its key columns.
+ */
+public class LockKey {
+  private final String table;
+  private final String row;
+
+  private LockKey(String table, String row) {
+    this.table = table;
+    this.row = row;
+  }
+
+  public static LockKey table(String table) {
+    return new LockKey(table, null);
+  }
+
+  public static LockKey row(String table, String row) {
+    return new LockKey(table, row);
+  }
+
+  public String getTable() {
+    return table;
+  }
+
+  public String getRow() {
+    return row;
+  }
+
+  public boolean isTable() {
+    return row == null;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    LockKey lockKey = (LockKey) o;
+    return table.equals(lockKey.table) && Objects.equals(row, lockKey.row);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(table, row);
+  }
+
+  @Override
+  public String toString() {
+    return row == null ? table : table + "[" + row + "]";
+  }
+}
@@ -0,0 +1,259 @@
+package transactionmanager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class LockManager {
+
+  /**
+   * Every key has its own entry guarded by its own lock, so transactions with disjoint footprints never touch
+   * the same shared state. Idle entries are retired and removed from the table.
+   */
+  private final ConcurrentMap<LockKey, LockEntry> lockTable = new ConcurrentHashMap<>();
+  private final ConcurrentMap<RunningTransaction, LockRequest> waiting = new ConcurrentHashMap<>();
+  private volatile Runnable waitListener = () -> {
+  };
+
+  /**
+   * Blocks the calling thread until the lock on the key is granted in the given mode. Waiters are parked on their own
+   * condition and are granted in FIFO order, so a blocked transaction does not use any CPU. A transaction that already
+   * holds the key in a weaker mode is upgraded to the combination of both modes: the upgrade is queued ahead of the
+   * plain requests and granted once it is compatible with every other holder.
+   *
+   * @throws DeadlockException if the transaction was chosen as a deadlock victim while waiting
+   */
+  public void acquire(RunningTransaction transaction, LockKey key, LockMode mode)
+      throws InterruptedException, DeadlockException {
+    LockEntry entry = lockEntry(key);
+    try {
+      LockMode heldMode = entry.holders.get(transaction);
+      boolean upgrade = heldMode != null;
+      if (upgrade) {
+        mode = heldMode.combine(mode);
+        if (mode == heldMode) {
+          return;
+        }
+      }
+      if ((upgrade || entry.waiters.isEmpty()) && entry.isCompatible(transaction, mode)) {
+        entry.holders.put(transaction, mode);
+        return;
+      }
+
+      LockRequest request = new LockRequest(transaction, key, entry, mode, upgrade);
+      if (upgrade) {
+        entry.enqueueUpgrade(request);
+      } else {
+        entry.waiters.addLast(request);
+      }
+      waiting.put(transaction, request);
+      waitListener.run();
+      try {
+        while (!request.granted && !request.aborted) {
+          request.condition.await();
+        }
+      } catch (InterruptedException e) {
+        if (request.granted) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        cancel(request);
+        throw e;
+      } finally {
+        waiting.remove(transaction);
+      }
+
+      if (request.aborted) {
+        cancel(request);
+        throw new DeadlockException("Transaction " + transaction + " aborted to break a deadlock on " + key);
+      }
+    } finally {
+      entry.lock.unlock();
+    }
+  }
+
+  public void release(RunningTransaction transaction, LockKey key) {
+    LockEntry entry = lockTable.get(key);
+    if (entry == null) {
+      return;
+    }
+    entry.lock.lock();
+    try {
+      if (entry.retired) {
+        return;
+      }
+      entry.holders.remove(transaction);
+      grantWaiters(entry);
+      retireIfIdle(key, entry);
+    } finally {
+      entry.lock.unlock();
+    }
+  }
+
+  public void releaseAll(RunningTransaction transaction, Collection<LockKey> keys) {
+    for (LockKey key : keys) {
+      release(transaction, key);
+    }
+  }
+
+  /**
+   * Registers a callback run every time a transaction starts waiting for a lock.
+   */
+  public void setWaitListener(Runnable waitListener) {
+    this.waitListener = waitListener;
+  }
+
+  /**
+   * Builds the waits-for graph: every waiting transaction points to the holders and the earlier waiters of its key
+   * whose modes conflict with the mode it asked for.
+   */
+  public Map<RunningTransaction, Set<RunningTransaction>> waitsForGraph() {
+    Map<RunningTransaction, Set<RunningTransaction>> graph = new HashMap<>();
+    for (LockRequest request : waiting.values()) {
+      LockEntry entry = request.entry;
+      entry.lock.lock();
+      try {
+        if (request.granted || request.aborted) {
+          continue;
+        }
+        Set<RunningTransaction> blockers = new HashSet<>();
+        for (Map.Entry<RunningTransaction, LockMode> holder : entry.holders.entrySet()) {
+          if (holder.getKey() != request.transaction && !request.mode.isCompatibleWith(holder.getValue())) {
+            blockers.add(holder.getKey());
+          }
+        }
+        for (LockRequest waiter : entry.waiters) {
+          if (waiter == request) {
+            break;
+          }
+          if (waiter.transaction != request.transaction && !request.mode.isCompatibleWith(waiter.mode)) {
+            blockers.add(waiter.transaction);
+          }
+        }
+        graph.put(request.transaction, blockers);
+      } finally {
+        entry.lock.unlock();
+      }
+    }
+    return graph;
+  }
+
+  /**
+   * Returns the {@link System#nanoTime()} at which the transaction started waiting, or -1 if it is not waiting.
+   */
+  public long waitingSince(RunningTransaction transaction) {
+    LockRequest request = waiting.get(transaction);
+    return request == null ? -1 : request.waitStart;
+  }
+
+  /**
+   * Wakes up a waiting transaction with a {@link DeadlockException}. Returns false if the transaction is no longer
+   * waiting for a lock.
+   */
+  public boolean abort(RunningTransaction transaction) {
+    LockRequest request = waiting.get(transaction);
+    if (request == null) {
+      return false;
+    }
+    request.entry.lock.lock();
+    try {
+      if (request.granted || request.aborted) {
+        return false;
+      }
+      request.aborted = true;
+      request.condition.signal();
+      return true;
+    } finally {
+      request.entry.lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the live entry of the key with its lock held.
+   */
+  private LockEntry lockEntry(LockKey key) {
+    while (true) {
+      LockEntry entry = lockTable.computeIfAbsent(key, k -> new LockEntry());
+      entry.lock.lock();
+      if (!entry.retired) {
+        return entry;
+      }
+      entry.lock.unlock();
+    }
+  }
+
+  private void cancel(LockRequest request) {
+    request.entry.waiters.remove(request);
+    grantWaiters(request.entry);
+    retireIfIdle(request.key, request.entry);
+  }
+
+  private void grantWaiters(LockEntry entry) {
+    LockRequest head = entry.waiters.peekFirst();
+    while (head != null && entry.isCompatible(head.transaction, head.mode)) {
+      entry.waiters.pollFirst();
+      entry.holders.put(head.transaction, head.mode);
+      head.granted = true;
+      head.condition.signal();
+      head = entry.waiters.peekFirst();
+    }
+  }
+
+  private void retireIfIdle(LockKey key, LockEntry entry) {
+    if (entry.holders.isEmpty() && entry.waiters.isEmpty()) {
+      entry.retired = true;
+      lockTable.remove(key, entry);
+    }
+  }
+
+  private static class LockEntry {
+    private final ReentrantLock lock = new ReentrantLock();
+    private boolean retired;
+    private final Map<RunningTransaction, LockMode> holders = new IdentityHashMap<>();
+    private final LinkedList<LockRequest> waiters = new LinkedList<>();
+
+    private boolean isCompatible(RunningTransaction transaction, LockMode mode) {
+      for (Map.Entry<RunningTransaction, LockMode> holder : holders.entrySet()) {
+        if (holder.getKey() != transaction && !mode.isCompatibleWith(holder.getValue())) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void enqueueUpgrade(LockRequest request) {
+      ListIterator<LockRequest> iterator = waiters.listIterator();
+      while (iterator.hasNext()) {
+        if (!iterator.next().upgrade) {
+          iterator.previous();
+          break;
+        }
+      }
+      iterator.add(request);
+    }
+  }
+
+  private static class LockRequest {
+    private final RunningTransaction transaction;
+    private final LockKey key;
+    private final LockEntry entry;
+    private final LockMode mode;
+    private final boolean upgrade;
+    private final Condition condition;
+    private final long waitStart = System.nanoTime();
+    private boolean granted;
+    private boolean aborted;
+
+    private LockRequest(RunningTransaction transaction, LockKey key, LockEntry entry, LockMode mode,
+                        boolean upgrade) {
+      this.transaction = transaction;
+      this.key = key;
+      this.entry = entry;
+      this.mode = mode;
+      this.upgrade = upgrade;
+      this.condition = entry.lock.newCondition();
+    }
+  }
+}
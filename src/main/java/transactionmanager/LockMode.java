@@ -0,0 +1,37 @@
+package transactionmanager;
+
+/**
+ * Lock modes of the multiple granularity locking protocol: an intention exclusive lock is taken on a table before
+ * exclusive locks are taken on its rows. Reads always lock whole tables, so there is no intention shared mode.
+ */
+public enum LockMode {
+  INTENTION_EXCLUSIVE,
+  SHARED,
+  SHARED_INTENTION_EXCLUSIVE,
+  EXCLUSIVE;
+
+  private static final boolean[][] COMPATIBILITY = {
+      /*               IX     S      SIX    X     */
+      /* IX  */ {true, false, false, false},
+      /* S   */ {false, true, false, false},
+      /* SIX */ {false, false, false, false},
+      /* X   */ {false, false, false, false}
+  };
+
+  public boolean isCompatibleWith(LockMode other) {
+    return COMPATIBILITY[ordinal()][other.ordinal()];
+  }
+
+  /**
+   * Returns the weakest mode that grants both this mode and the other one, used when a holder asks for a new mode.
+   */
+  public LockMode combine(LockMode other) {
+    if (this == other) {
+      return this;
+    }
+    if (this == EXCLUSIVE || other == EXCLUSIVE) {
+      return EXCLUSIVE;
+    }
+    return SHARED_INTENTION_EXCLUSIVE;
+  }
+}
@@ -0,0 +1,61 @@
+package transactionmanager;
+
+import server.Operation;
+import server.OperationType;
+import server.Operations;
+import server.Table;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Derives the locks an operation needs. Writes take an intention lock on their table and an exclusive lock on the row
+ * they touch, so independent bookings run concurrently. Reads scan whole tables, so they lock the table itself. A route
+ * write also locks the flights of the route: flights are searched and versioned joined with their route, so a route
+ * write changes what its flights read as, and every transaction installing new snapshot versions of those flights
+ * must hold the same row lock until its versions are in place.
+ */
+public class LockPlanner {
+
+  public static Map<LockKey, LockMode> locksFor(Operation operation) {
+    Map<LockKey, LockMode> locks = new LinkedHashMap<>();
+    String table = Operations.tableName(operation.getTable());
+    if (table == null) {
+      return locks;
+    }
+
+    if (operation.getType() == OperationType.READ) {
+      locks.put(LockKey.table(table), LockMode.SHARED);
+      return locks;
+    }
+
+    String row = rowKey(operation);
+    if (row == null) {
+      locks.put(LockKey.table(table), LockMode.EXCLUSIVE);
+    } else {
+      locks.put(LockKey.table(table), LockMode.INTENTION_EXCLUSIVE);
+      locks.put(LockKey.row(table, row), LockMode.EXCLUSIVE);
+      if (operation.getTable() == Table.ROUTES) {
+        locks.put(LockKey.table("flights"), LockMode.INTENTION_EXCLUSIVE);
+        locks.put(LockKey.row("flights", row), LockMode.EXCLUSIVE);
+      }
+    }
+    return locks;
+  }
+
+  private static String rowKey(Operation operation) {
+    switch (operation.getRowCase()) {
+      case ROUTE:
+        return String.valueOf(operation.getRoute().getId());
+      case FLIGHT:
+        return String.valueOf(operation.getFlight().getRouteId());
+      case USER:
+        return String.valueOf(operation.getUser().getId());
+      case HOTELRESERVATION:
+        // The primary key of hotel_reservations is the hotel alone, whoever reserves it
+        return String.valueOf(operation.getHotelReservation().getHotelId());
+      default:
+        return null;
+    }
+  }
+}
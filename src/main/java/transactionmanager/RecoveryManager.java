@@ -0,0 +1,123 @@
+package transactionmanager;
+
+import data.Database;
+import data.OperationException;
+import server.Operation;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Brings the databases back to a consistent state after a crash. Every database stores, in the same database
+ * transaction as the writes, the last LSN of the {@link WriteAheadLog} it contains. Operations of committed
+ * transactions logged after that LSN are redone; operations of all other transactions up to that LSN are undone with
+ * their logged inverses, except for those their rollback already compensated. A database whose commit failed after
+ * the commit record was logged records an abort, and redoes nothing of the aborted transactions.
+ */
+public class RecoveryManager {
+
+  public interface OperationRunner {
+    void run(Database database, Operation operation) throws OperationException;
+  }
+
+  private final WriteAheadLog log;
+  private final Map<Database, GroupCommitter> committers;
+
+  public RecoveryManager(WriteAheadLog log, Map<Database, GroupCommitter> committers) {
+    this.log = log;
+    this.committers = committers;
+  }
+
+  public void recover(OperationRunner runner) throws IOException {
+    List<WriteAheadLog.Record> records = log.readAll();
+    Set<String> committed = new HashSet<>();
+    long lastLsn = 0;
+    for (WriteAheadLog.Record record : records) {
+      if (record.getType() == WriteAheadLog.RecordType.COMMIT) {
+        committed.add(record.getTransactionId());
+      }
+      lastLsn = Math.max(lastLsn, record.getLsn());
+    }
+
+    for (Map.Entry<Database, GroupCommitter> entry : committers.entrySet()) {
+      Database database = entry.getKey();
+      GroupCommitter committer = entry.getValue();
+      committer.lock();
+      try {
+        long checkpoint = committer.readCheckpoint();
+        lastLsn = Math.max(lastLsn, checkpoint);
+
+        Set<String> aborted = new HashSet<>();
+        for (WriteAheadLog.Record record : records) {
+          if (record.getDatabase() == database && record.getType() == WriteAheadLog.RecordType.ABORT) {
+            aborted.add(record.getTransactionId());
+          }
+        }
+
+        List<WriteAheadLog.Record> redo = new ArrayList<>();
+        Map<String, List<WriteAheadLog.Record>> durableOperations = new LinkedHashMap<>();
+        Map<String, Integer> durableCompensations = new HashMap<>();
+        for (WriteAheadLog.Record record : records) {
+          if (record.getDatabase() != database || record.getType() == WriteAheadLog.RecordType.ABORT) {
+            continue;
+          }
+          String transactionId = record.getTransactionId();
+          if (aborted.contains(transactionId)) {
+            // Its writes never reached the database
+            continue;
+          }
+          if (committed.contains(transactionId)) {
+            if (record.getType() == WriteAheadLog.RecordType.OPERATION && record.getLsn() > checkpoint) {
+              redo.add(record);
+            }
+          } else if (record.getLsn() <= checkpoint) {
+            if (record.getType() == WriteAheadLog.RecordType.OPERATION) {
+              durableOperations.computeIfAbsent(transactionId, k -> new ArrayList<>()).add(record);
+            } else {
+              durableCompensations.merge(transactionId, 1, Integer::sum);
+            }
+          }
+        }
+
+        // A rollback compensates operations newest first, so the last compensated ones need no undo
+        List<WriteAheadLog.Record> undo = new ArrayList<>();
+        for (Map.Entry<String, List<WriteAheadLog.Record>> operations : durableOperations.entrySet()) {
+          List<WriteAheadLog.Record> transactionOperations = operations.getValue();
+          int compensated = durableCompensations.getOrDefault(operations.getKey(), 0);
+          undo.addAll(transactionOperations.subList(0, Math.max(0, transactionOperations.size() - compensated)));
+        }
+        undo.sort(Comparator.comparingLong(WriteAheadLog.Record::getLsn).reversed());
+
+        for (WriteAheadLog.Record record : redo) {
+          runner.run(database, record.getOperation());
+        }
+        for (WriteAheadLog.Record record : undo) {
+          if (record.getInverse() != null) {
+            runner.run(database, record.getInverse());
+          }
+        }
+        if (!redo.isEmpty() || !undo.isEmpty()) {
+          System.out.println("Recovery of " + database + " redid " + redo.size() + " and undid " + undo.size() + " operations");
+        }
+      } catch (OperationException | SQLException e) {
+        throw new IOException("Recovery of " + database + " failed", e);
+      } finally {
+        committer.unlock();
+      }
+    }
+
+    for (GroupCommitter committer : committers.values()) {
+      committer.lock();
+      try {
+        committer.writeCheckpoint(lastLsn);
+        committer.getConnection().getConnection().commit();
+      } catch (SQLException e) {
+        throw new IOException(e);
+      } finally {
+        committer.unlock();
+      }
+    }
+    log.reset(lastLsn);
+  }
+}
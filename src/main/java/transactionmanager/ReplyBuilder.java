@@ -0,0 +1,46 @@
+package transactionmanager;
+
+import data.airlines.Flight;
+import data.hotels.Hotel;
+import data.users.User;
+import server.Records;
+import server.TransactionReply;
+
+import java.util.List;
+
+/**
+ * Collects the reply of a transaction while it runs: a line of text per operation that changed something and a result
+ * with the records of every read.
+ */
+class ReplyBuilder {
+  private final StringBuilder message = new StringBuilder();
+  private final TransactionReply.Builder reply = TransactionReply.newBuilder();
+
+  ReplyBuilder() {
+  }
+
+  ReplyBuilder(String message) {
+    this.message.append(message);
+  }
+
+  ReplyBuilder append(Object text) {
+    message.append(text);
+    return this;
+  }
+
+  void addFlights(List<Flight> flights) {
+    reply.addResults(Records.flights(flights));
+  }
+
+  void addHotels(List<Hotel> hotels) {
+    reply.addResults(Records.hotels(hotels));
+  }
+
+  void addUsers(List<User> users) {
+    reply.addResults(Records.users(users));
+  }
+
+  TransactionReply build(boolean success) {
+    return reply.setMessage(message.toString()).setSuccess(success).build();
+  }
+}
@@ -0,0 +1,103 @@
+package transactionmanager;
+
+import data.Database;
+import server.Operation;
+import server.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * One attempt at running a transaction. Locks are owned by the attempt, so a transaction restarted after being chosen
+ * as a deadlock victim never inherits the locks of its previous attempt.
+ */
+public class RunningTransaction {
+  private final Transaction transaction;
+  private final String globalId = UUID.randomUUID().toString();
+  private final int attempt;
+  private final long startTime;
+  private final long startNanos;
+  private volatile int operationsExecuted;
+  private final Map<Database, List<Operation>> writes = new EnumMap<>(Database.class);
+
+  public RunningTransaction(Transaction transaction) {
+    this(transaction, 1, System.currentTimeMillis(), System.nanoTime());
+  }
+
+  private RunningTransaction(Transaction transaction, int attempt, long startTime, long startNanos) {
+    this.transaction = transaction;
+    this.attempt = attempt;
+    this.startTime = startTime;
+    this.startNanos = startNanos;
+  }
+
+  public Transaction getTransaction() {
+    return transaction;
+  }
+
+  public String getId() {
+    return transaction.getId();
+  }
+
+  /**
+   * Unique across attempts and server restarts, unlike the id chosen by the client.
+   */
+  public String getGlobalId() {
+    return globalId;
+  }
+
+  public int getAttempt() {
+    return attempt;
+  }
+
+  /**
+   * Start time of the first attempt, so restarted transactions keep their age.
+   */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  /**
+   * {@link System#nanoTime()} at the start of the first attempt, to measure latencies.
+   */
+  public long getStartNanos() {
+    return startNanos;
+  }
+
+  public int getOperationsExecuted() {
+    return operationsExecuted;
+  }
+
+  public void operationExecuted() {
+    operationsExecuted++;
+  }
+
+  public Set<Database> getWrittenDatabases() {
+    return writes.keySet();
+  }
+
+  /**
+   * Returns the writes of the attempt to the database, in order. They are applied to the database when it commits.
+   */
+  public List<Operation> getWrites(Database database) {
+    return writes.getOrDefault(database, Collections.emptyList());
+  }
+
+  public void addWrite(Database database, Operation operation) {
+    writes.computeIfAbsent(database, key -> new ArrayList<>()).add(operation);
+  }
+
+  public RunningTransaction restart() {
+    return new RunningTransaction(transaction, attempt + 1, startTime, startNanos);
+  }
+
+  @Override
+  public String toString() {
+    return transaction.getId() + "#" + attempt;
+  }
+}
@@ -0,0 +1,199 @@
+package transactionmanager;
+
+import data.OperationException;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caches committed search results by destination, evicting the least recently used one beyond the maximum size and
+ * dropping results older than the time to live. Writers invalidate the destinations they changed once they committed.
+ * A result loaded while an invalidation happened may already be stale, so it is returned but not cached.
+ */
+public class SearchCache<V> {
+
+  public static final String SIZE_PROPERTY = "transactionmanager.searchCache.size";
+  public static final String TTL_PROPERTY = "transactionmanager.searchCache.ttlMillis";
+  private static final int DEFAULT_SIZE = 1024;
+  private static final long DEFAULT_TTL_MILLIS = 60_000;
+
+  private final int maxSize;
+  private final long ttlNanos;
+
+  // Guarded by lock, a j.u.c. lock rather than a monitor so that waiting for it never pins a virtual thread
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Entries<V> entries;
+  private long invalidations;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+
+  public interface Loader<V> {
+    V load() throws OperationException;
+  }
+
+  /**
+   * A cache of the given size; a size of 0 disables it.
+   */
+  public SearchCache(int maxSize, long ttl, TimeUnit unit) {
+    this.maxSize = maxSize;
+    this.ttlNanos = unit.toNanos(ttl);
+    this.entries = new Entries<>(maxSize, evictions);
+  }
+
+  public static <V> SearchCache<V> fromSystemProperties() {
+    return new SearchCache<>(Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE),
+        Long.getLong(TTL_PROPERTY, DEFAULT_TTL_MILLIS), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns the cached result for the destination, or loads it and caches it. The loader runs without holding the
+   * cache lock, so concurrent misses on the same destination may each load it.
+   */
+  public V get(String destination, Loader<V> loader) throws OperationException {
+    if (maxSize == 0) {
+      return loader.load();
+    }
+    long invalidationsBefore;
+    lock.lock();
+    try {
+      Entry<V> entry = entries.get(destination);
+      if (entry != null && System.nanoTime() - entry.loadedAt < ttlNanos) {
+        hits.increment();
+        return entry.value;
+      }
+      if (entry != null) {
+        entries.remove(destination);
+        expirations.increment();
+      }
+      invalidationsBefore = invalidations;
+    } finally {
+      lock.unlock();
+    }
+
+    misses.increment();
+    V value = loader.load();
+    lock.lock();
+    try {
+      if (invalidations == invalidationsBefore) {
+        entries.put(destination, new Entry<>(value, System.nanoTime()));
+      }
+    } finally {
+      lock.unlock();
+    }
+    return value;
+  }
+
+  public void invalidate(Collection<String> destinations) {
+    if (destinations.isEmpty()) {
+      return;
+    }
+    lock.lock();
+    try {
+      invalidations++;
+      for (String destination : destinations) {
+        entries.remove(destination);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void invalidateAll() {
+    lock.lock();
+    try {
+      invalidations++;
+      entries.clear();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getSize() {
+    lock.lock();
+    try {
+      return entries.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public double getHitRatio() {
+    long hitCount = hits.sum();
+    long total = hitCount + misses.sum();
+    return total == 0 ? 0 : (double) hitCount / total;
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  public long getExpirations() {
+    return expirations.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "SearchCache{" +
+        "size=" + getSize() + "/" + maxSize +
+        ", hits=" + getHits() +
+        ", misses=" + getMisses() +
+        ", hitRatio=" + getHitRatio() +
+        ", evictions=" + getEvictions() +
+        ", expirations=" + getExpirations() +
+        '}';
+  }
+
+  /**
+   * Entries in access order, evicting the least recently used one beyond the maximum size.
+   */
+  private static class Entries<V> extends LinkedHashMap<String, Entry<V>> {
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+    private final LongAdder evictions;
+
+    private Entries(int maxSize, LongAdder evictions) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+      this.evictions = evictions;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+      if (size() > maxSize) {
+        evictions.increment();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private static class Entry<V> {
+    private final V value;
+    private final long loadedAt;
+
+    private Entry(V value, long loadedAt) {
+      this.value = value;
+      this.loadedAt = loadedAt;
+    }
+  }
+}
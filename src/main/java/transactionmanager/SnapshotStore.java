@@ -0,0 +1,188 @@
+package transactionmanager;
+
+import data.OperationException;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps committed versions of the rows of the tables searched by read-only transactions. Every row has a chain of
+ * versions, newest first, each stamped with the commit timestamp of the transaction that installed it. A snapshot
+ * reads, for every row, the newest version not newer than the snapshot, so read-only transactions see a consistent
+ * state without taking any lock. Versions no active snapshot can see anymore are dropped when a newer one is installed.
+ */
+public class SnapshotStore {
+
+  private final Map<String, ConcurrentSkipListMap<Integer, Version>> tables = new ConcurrentHashMap<>();
+  private final ReentrantLock installLock = new ReentrantLock();
+
+  // Guarded by snapshotLock, a j.u.c. lock rather than a monitor so that waiting for it never pins a virtual thread
+  private final ReentrantLock snapshotLock = new ReentrantLock();
+  private final TreeMap<Long, Integer> activeSnapshots = new TreeMap<>();
+  private long lastCommitTimestamp;
+
+  private final LongAdder snapshots = new LongAdder();
+  private final LongAdder versionsInstalled = new LongAdder();
+  private final LongAdder versionsCollected = new LongAdder();
+
+  public interface RowLoader {
+    /**
+     * Reads the committed rows stored under the key; an empty list means the key has no rows anymore.
+     */
+    List<?> load(String table, int key) throws OperationException;
+  }
+
+  /**
+   * Loads the initial version of the rows of a table, before any snapshot is taken.
+   */
+  public void load(String table, Map<Integer, ? extends List<?>> rows) {
+    ConcurrentSkipListMap<Integer, Version> versions = new ConcurrentSkipListMap<>();
+    for (Map.Entry<Integer, ? extends List<?>> row : rows.entrySet()) {
+      versions.put(row.getKey(), new Version(0, new ArrayList<>(row.getValue()), null));
+    }
+    tables.put(table, versions);
+  }
+
+  public boolean isVersioned(String table) {
+    return tables.containsKey(table);
+  }
+
+  public long beginSnapshot() {
+    snapshotLock.lock();
+    try {
+      activeSnapshots.merge(lastCommitTimestamp, 1, Integer::sum);
+      snapshots.increment();
+      return lastCommitTimestamp;
+    } finally {
+      snapshotLock.unlock();
+    }
+  }
+
+  public void endSnapshot(long snapshot) {
+    snapshotLock.lock();
+    try {
+      activeSnapshots.computeIfPresent(snapshot, (timestamp, count) -> count == 1 ? null : count - 1);
+    } finally {
+      snapshotLock.unlock();
+    }
+  }
+
+  /**
+   * Returns the rows of the table visible to the snapshot, ordered by key.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> List<T> read(String table, long snapshot) {
+    List<T> rows = new ArrayList<>();
+    for (Version head : tables.get(table).values()) {
+      Version version = head;
+      while (version != null && version.timestamp > snapshot) {
+        version = version.next;
+      }
+      if (version != null) {
+        rows.addAll((List<T>) version.rows);
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Installs a new version of every touched row, read through the loader after the writing transaction committed and
+   * while it still holds its locks. All versions get the same commit timestamp, which becomes visible to new snapshots
+   * only once every one of them is in place.
+   */
+  public void install(Map<String, Set<Integer>> touchedRows, RowLoader loader) throws OperationException {
+    if (touchedRows.isEmpty()) {
+      return;
+    }
+    installLock.lock();
+    try {
+      long timestamp = lastCommitTimestamp() + 1;
+      long oldestSnapshot = oldestSnapshot();
+      for (Map.Entry<String, Set<Integer>> table : touchedRows.entrySet()) {
+        ConcurrentSkipListMap<Integer, Version> versions = tables.get(table.getKey());
+        for (Integer key : table.getValue()) {
+          List<?> rows = new ArrayList<>(loader.load(table.getKey(), key));
+          Version head = new Version(timestamp, rows, versions.get(key));
+          versions.put(key, head);
+          versionsInstalled.increment();
+          collect(head, oldestSnapshot);
+        }
+      }
+      publish(timestamp);
+    } finally {
+      installLock.unlock();
+    }
+  }
+
+  /**
+   * Cuts the chain after the newest version visible to the oldest snapshot, which every active and future snapshot
+   * reads instead of anything older.
+   */
+  private void collect(Version head, long oldestSnapshot) {
+    Version version = head;
+    while (version != null && version.timestamp > oldestSnapshot) {
+      version = version.next;
+    }
+    if (version == null) {
+      return;
+    }
+    for (Version old = version.next; old != null; old = old.next) {
+      versionsCollected.increment();
+    }
+    version.next = null;
+  }
+
+  private long lastCommitTimestamp() {
+    snapshotLock.lock();
+    try {
+      return lastCommitTimestamp;
+    } finally {
+      snapshotLock.unlock();
+    }
+  }
+
+  private long oldestSnapshot() {
+    snapshotLock.lock();
+    try {
+      return activeSnapshots.isEmpty() ? lastCommitTimestamp : activeSnapshots.firstKey();
+    } finally {
+      snapshotLock.unlock();
+    }
+  }
+
+  private void publish(long timestamp) {
+    snapshotLock.lock();
+    try {
+      lastCommitTimestamp = timestamp;
+    } finally {
+      snapshotLock.unlock();
+    }
+  }
+
+  public long getSnapshots() {
+    return snapshots.sum();
+  }
+
+  public long getVersionsInstalled() {
+    return versionsInstalled.sum();
+  }
+
+  public long getVersionsCollected() {
+    return versionsCollected.sum();
+  }
+
+  private static class Version {
+    private final long timestamp;
+    private final List<?> rows;
+    private volatile Version next;
+
+    private Version(long timestamp, List<?> rows, Version next) {
+      this.timestamp = timestamp;
+      this.rows = rows;
+      this.next = next;
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package transactionmanager;
+
+import server.Operation;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Strict timestamp ordering. Every attempt gets a timestamp at its first operation and the schedule is kept equivalent
+ * to running the attempts in timestamp order: an operation that arrives too late, because a younger transaction
+ * already read or wrote what it wants to write, or already wrote what it wants to read, aborts its transaction, which
+ * is restarted with a new timestamp. Writes are staged and only reach the database when their transaction commits, so
+ * an operation that touches what an older, unfinished transaction wrote waits until that transaction finished: a read
+ * run earlier would miss a write ordered before it, and a write committed earlier would be overwritten by an older
+ * one. Transactions only ever wait for older ones, so there are no deadlocks and no lock table: tables and rows just
+ * remember the newest timestamps that read and wrote them.
+ * <p>
+ * A write of a row is also a write of its table, but a write of a whole table does not advance the timestamps of its
+ * rows, so an older transaction can still read a row after it. Only writes without a row lock whole tables, see
+ * {@link LockPlanner}, and {@link server.Operations} only lets those through for tables that are never written.
+ */
+public class TimestampOrdering implements ConcurrencyControl {
+
+  private static final long MAX_RESTART_DELAY_MILLIS = 100;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition finished = lock.newCondition();
+  private long clock;
+  private final Map<RunningTransaction, Long> timestamps = new IdentityHashMap<>();
+  private final Map<RunningTransaction, Set<LockKey>> accessedKeys = new IdentityHashMap<>();
+  private final TreeSet<Long> activeTimestamps = new TreeSet<>();
+  private final Map<LockKey, Entry> entries = new HashMap<>();
+
+  private final LongAdder aborts = new LongAdder();
+
+  @Override
+  public void beforeOperation(RunningTransaction transaction, Operation operation)
+      throws InterruptedException, TransactionAbortedException {
+    lock.lock();
+    try {
+      Long timestamp = timestamps.get(transaction);
+      if (timestamp == null) {
+        timestamp = ++clock;
+        timestamps.put(transaction, timestamp);
+        accessedKeys.put(transaction, new HashSet<>());
+        activeTimestamps.add(timestamp);
+      }
+      for (Map.Entry<LockKey, LockMode> access : LockPlanner.locksFor(operation).entrySet()) {
+        if (access.getValue() == LockMode.SHARED) {
+          read(transaction, timestamp, access.getKey());
+        } else if (access.getValue() == LockMode.EXCLUSIVE) {
+          write(transaction, timestamp, access.getKey());
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void read(RunningTransaction transaction, long timestamp, LockKey key)
+      throws InterruptedException, TransactionAbortedException {
+    Entry entry;
+    while (true) {
+      // Looked up again after every wait, since finish() may have dropped the entry meanwhile
+      entry = entry(key);
+      if (entry.writeTimestamp > timestamp) {
+        abort(transaction, "read", key);
+      }
+      if (!entry.waitsFor(transaction)) {
+        break;
+      }
+      finished.await();
+    }
+    entry.readTimestamp = Math.max(entry.readTimestamp, timestamp);
+    accessedKeys.get(transaction).add(key);
+  }
+
+  /**
+   * A row write is also a write of its table, so that reads of the whole table are ordered with it.
+   */
+  private void write(RunningTransaction transaction, long timestamp, LockKey key)
+      throws InterruptedException, TransactionAbortedException {
+    Entry entry;
+    Entry tableEntry;
+    while (true) {
+      entry = entry(key);
+      tableEntry = key.isTable() ? entry : entry(LockKey.table(key.getTable()));
+      if (entry.readTimestamp > timestamp || entry.writeTimestamp > timestamp || tableEntry.readTimestamp > timestamp) {
+        abort(transaction, "write", key);
+      }
+      if (!entry.waitsFor(transaction)) {
+        break;
+      }
+      finished.await();
+    }
+    for (Entry written : Arrays.asList(entry, tableEntry)) {
+      written.writeTimestamp = Math.max(written.writeTimestamp, timestamp);
+      written.pendingWriters.add(transaction);
+    }
+    accessedKeys.get(transaction).add(key);
+    accessedKeys.get(transaction).add(LockKey.table(key.getTable()));
+  }
+
+  private void abort(RunningTransaction transaction, String access, LockKey key) throws TransactionAbortedException {
+    aborts.increment();
+    throw new TransactionAbortedException("Transaction " + transaction + " came too late to " + access + " " + key);
+  }
+
+  private Entry entry(LockKey key) {
+    return entries.computeIfAbsent(key, k -> new Entry());
+  }
+
+  /**
+   * Wakes up the transactions waiting for the finished one and forgets the entries whose timestamps are older than
+   * every active transaction, since they can no longer abort anyone.
+   */
+  @Override
+  public void finish(RunningTransaction transaction) {
+    lock.lock();
+    try {
+      Long timestamp = timestamps.remove(transaction);
+      if (timestamp == null) {
+        return;
+      }
+      activeTimestamps.remove(timestamp);
+      long oldestActive = activeTimestamps.isEmpty() ? Long.MAX_VALUE : activeTimestamps.first();
+      for (LockKey key : accessedKeys.remove(transaction)) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+          continue;
+        }
+        entry.pendingWriters.remove(transaction);
+        if (entry.pendingWriters.isEmpty() && entry.readTimestamp < oldestActive && entry.writeTimestamp < oldestActive) {
+          entries.remove(key);
+        }
+      }
+      finished.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * A restarted transaction gets the youngest timestamp, so it is aborted again as soon as the transactions it lost
+   * against restart as well. A random, exponentially growing delay lets one of them run ahead instead.
+   */
+  @Override
+  public long restartDelayMillis(RunningTransaction transaction) {
+    long maxDelay = Math.min(MAX_RESTART_DELAY_MILLIS, 1L << Math.min(transaction.getAttempt(), 16));
+    return ThreadLocalRandom.current().nextLong(maxDelay + 1);
+  }
+
+  @Override
+  public long getAborts() {
+    return aborts.sum();
+  }
+
+  private static class Entry {
+    private long readTimestamp;
+    private long writeTimestamp;
+    private final Set<RunningTransaction> pendingWriters =
+        Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Whether the entry holds a write of another transaction that has not finished yet. Pending writers younger than
+     * the transaction would have aborted it already.
+     */
+    private boolean waitsFor(RunningTransaction transaction) {
+      for (RunningTransaction writer : pendingWriters) {
+        if (writer != transaction) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
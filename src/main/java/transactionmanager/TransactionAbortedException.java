@@ -0,0 +1,11 @@
+package transactionmanager;
+
+/**
+ * Thrown when the concurrency control aborts a transaction to keep the schedule serializable. The transaction is rolled
+ * back and restarted.
+ */
+public class TransactionAbortedException extends Exception {
+  public TransactionAbortedException(String s) {
+    super(s);
+  }
+}
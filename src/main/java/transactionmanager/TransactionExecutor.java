@@ -0,0 +1,197 @@
+package transactionmanager;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs transactions in one of two modes, chosen with the {@value #THREADS_PROPERTY} system property:
+ * <ul>
+ * <li>{@code platform} (the default): a fixed pool of workers in front of a bounded queue.</li>
+ * <li>{@code virtual}: every transaction gets its own virtual thread, so thousands of transactions waiting for locks,
+ * connections or their group commit wait cheaply. The capacity then bounds the transactions in flight. Those waits are
+ * on {@code java.util.concurrent} locks and queues, which unmount the virtual thread. JDBC calls do not: sqlite-jdbc
+ * runs them inside {@code synchronized} methods, which pin the carrier thread, so virtual threads only help with the
+ * lock and queue waits. The connection pools, sized on their own with {@code -Ddata.poolSize}, bound how many carriers
+ * JDBC calls can pin at once, together with one writer connection per database. Needs Java 21 at runtime, older runtimes fall back to
+ * the pool.</li>
+ * </ul>
+ * Either way, once the capacity is reached new transactions are rejected instead of piling up, so their latency stays
+ * bounded under a burst. The sizes are set with the {@value #WORKERS_PROPERTY} and {@value #QUEUE_CAPACITY_PROPERTY}
+ * system properties.
+ */
+public class TransactionExecutor {
+
+  public static final String THREADS_PROPERTY = "transactionmanager.threads";
+  public static final String WORKERS_PROPERTY = "transactionmanager.workers";
+  public static final String QUEUE_CAPACITY_PROPERTY = "transactionmanager.queueCapacity";
+  private static final int DEFAULT_WORKERS = 5;
+  private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+  private final int workers;
+  private final int queueCapacity;
+  private final ExecutorService executor;
+  private final boolean virtual;
+  // Bounds the transactions in flight on virtual threads, where there is no queue to bound
+  private final Semaphore inFlight;
+  private final AtomicInteger pending = new AtomicInteger();
+
+  private final LongAdder executed = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder totalWaitNanos = new LongAdder();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+  private final Histogram queueWait = new Histogram();
+
+  public TransactionExecutor(int workers, int queueCapacity) {
+    this(workers, queueCapacity, false);
+  }
+
+  public TransactionExecutor(int workers, int queueCapacity, boolean virtual) {
+    this.workers = workers;
+    this.queueCapacity = queueCapacity;
+    ExecutorService virtualExecutor = virtual ? newVirtualThreadPerTaskExecutor() : null;
+    if (virtual && virtualExecutor == null) {
+      System.err.println("Virtual threads are not available on Java " + System.getProperty("java.version") +
+          ", running transactions on " + workers + " platform workers");
+    }
+    this.virtual = virtualExecutor != null;
+    if (this.virtual) {
+      this.executor = virtualExecutor;
+      this.inFlight = new Semaphore(queueCapacity);
+    } else {
+      this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(queueCapacity), new ThreadPoolExecutor.AbortPolicy());
+      this.inFlight = null;
+    }
+  }
+
+  public static TransactionExecutor fromSystemProperties() {
+    String threads = System.getProperty(THREADS_PROPERTY, "platform");
+    if (!threads.equals("platform") && !threads.equals("virtual")) {
+      throw new IllegalArgumentException("Unknown thread mode " + threads);
+    }
+    return new TransactionExecutor(Integer.getInteger(WORKERS_PROPERTY, DEFAULT_WORKERS),
+        Integer.getInteger(QUEUE_CAPACITY_PROPERTY, DEFAULT_QUEUE_CAPACITY), threads.equals("virtual"));
+  }
+
+  /**
+   * Looked up reflectively, since the code is compiled for Java 8.
+   */
+  private static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Queues the task, recording how long it waited to start running.
+   *
+   * @throws RejectedExecutionException if the executor is at capacity
+   */
+  public void submit(Runnable task) {
+    if (inFlight != null && !inFlight.tryAcquire()) {
+      rejected.increment();
+      throw new RejectedExecutionException("Too many transactions in flight");
+    }
+    long enqueued = System.nanoTime();
+    pending.incrementAndGet();
+    try {
+      executor.execute(() -> {
+        pending.decrementAndGet();
+        long wait = System.nanoTime() - enqueued;
+        executed.increment();
+        totalWaitNanos.add(wait);
+        maxWaitNanos.accumulateAndGet(wait, Math::max);
+        queueWait.record(wait);
+        try {
+          task.run();
+        } finally {
+          if (inFlight != null) {
+            inFlight.release();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      pending.decrementAndGet();
+      if (inFlight != null) {
+        inFlight.release();
+      }
+      rejected.increment();
+      throw e;
+    }
+  }
+
+  /**
+   * Stops taking new transactions and waits for the queued ones to finish.
+   */
+  public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+    executor.shutdown();
+    return executor.awaitTermination(timeout, unit);
+  }
+
+  public boolean isVirtual() {
+    return virtual;
+  }
+
+  public int getWorkers() {
+    return workers;
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  /**
+   * The transactions submitted but not running yet.
+   */
+  public int getQueueDepth() {
+    return pending.get();
+  }
+
+  public int getActiveWorkers() {
+    if (virtual) {
+      return queueCapacity - inFlight.availablePermits() - pending.get();
+    }
+    return ((ThreadPoolExecutor) executor).getActiveCount();
+  }
+
+  public long getExecuted() {
+    return executed.sum();
+  }
+
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  public double getAverageWaitMillis() {
+    long count = executed.sum();
+    return count == 0 ? 0 : totalWaitNanos.sum() / 1e6 / count;
+  }
+
+  public double getMaxWaitMillis() {
+    return maxWaitNanos.get() / 1e6;
+  }
+
+  /**
+   * Time transactions waited between being queued and starting to run.
+   */
+  public Histogram getQueueWait() {
+    return queueWait;
+  }
+
+  @Override
+  public String toString() {
+    return "TransactionExecutor{" +
+        "threads=" + (virtual ? "virtual" : "platform") +
+        ", active=" + getActiveWorkers() + (virtual ? "" : "/" + workers) +
+        ", queued=" + getQueueDepth() + "/" + queueCapacity +
+        ", executed=" + getExecuted() +
+        ", rejected=" + getRejected() +
+        ", averageWaitMillis=" + getAverageWaitMillis() +
+        ", maxWaitMillis=" + getMaxWaitMillis() +
+        '}';
+  }
+}
@@ -1,422 +1,773 @@
 package transactionmanager;
 
+import data.ConnectionPool;
+import data.Database;
 import data.OperationException;
+import data.PooledConnection;
+import data.SchemaMigrator;
 import data.airlines.AirlinesManager;
 import data.airlines.Flight;
 import data.airlines.Route;
 import data.hotels.Hotel;
 import data.hotels.HotelsManager;
 import data.users.HotelReservation;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
 import io.grpc.stub.StreamObserver;
 import server.*;
 import data.users.User;
 import data.users.UsersManager;
 
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Timestamp;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class TransactionManager {
 
-  private Map<Variable, Transaction> writeLocks = new HashMap<>();
-  private Map<Variable, List<Transaction>> readLocks = new HashMap<>();
+  private static final Logger logger = Logger.getLogger(TransactionManager.class.getName());
 
-  private ExecutorService executor = Executors.newFixedThreadPool(5);
-  private ReentrantLock reentrantLock = new ReentrantLock();
+  private ConcurrencyControl concurrencyControl;
 
-  public void addTransaction(Transaction transaction, StreamObserver<TransactionReply> responseObserver) {
-    executor.submit(() -> runTransaction(transaction, responseObserver));
-  }
+  private static final long RESUBMIT_DELAY_MILLIS = 1;
+
+  private TransactionExecutor executor = TransactionExecutor.fromSystemProperties();
+  private ScheduledExecutorService restartScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "transaction-restarter");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private Map<Database, ConnectionPool> pools = new EnumMap<>(Database.class);
+  private Map<Database, GroupCommitter> committers = new EnumMap<>(Database.class);
+  private WriteAheadLog log;
+  private TwoPhaseCommitCoordinator coordinator;
+  private SnapshotStore snapshotStore = new SnapshotStore();
+  private SearchCache<List<Flight>> flightSearches = SearchCache.fromSystemProperties();
+  private SearchCache<List<Hotel>> hotelSearches = SearchCache.fromSystemProperties();
 
-  private void runTransaction(Transaction transaction, StreamObserver<TransactionReply> responseObserver) {
-    List<Variable> read = transaction.getReadSetList();
-    List<Variable> write = transaction.getWriteSetList();
-    Set<Variable> writeAndRead = new HashSet<>();
-    writeAndRead.addAll(write);
-    writeAndRead.addAll(read);
-    List<Operation> reverseOperations = new LinkedList<>();
-    StringBuilder messageBuilder = new StringBuilder();
-    Map<Variable, List<Operation>> variableToReadOperation = new HashMap<>();
-    Map<Variable, List<Operation>> variableToWriteOperation = new HashMap<>();
+  private final LongAdder committedTransactions = new LongAdder();
+  private final LongAdder restartedTransactions = new LongAdder();
+  private final LongAdder failedTransactions = new LongAdder();
+  private final TransactionMetrics metrics = new TransactionMetrics();
 
+  public TransactionManager() {
     try {
-      while (true) {
-        try {
-          reentrantLock.lock();
-          for (Variable variable : writeAndRead) {
-            if (writeLocks.get(variable) != null) {
-              throw new IllegalAccessException();
-            }
-          }
-        } catch (IllegalAccessException e) {
-          reentrantLock.unlock();
-          continue;
-        }
+      log = new WriteAheadLog(Database.getDirectory().resolve("wal.log"));
+      for (Database database : Database.values()) {
+        SchemaMigrator.migrate(database);
+        pools.put(database, ConnectionPool.fromSystemProperties(database.getUrl()));
+        committers.put(database, new GroupCommitter(database, new PooledConnection(
+            DriverManager.getConnection(database.getUrl()), PooledConnection.STATEMENT_CACHE_SIZE), log,
+            this::applyOperation));
+      }
+      new RecoveryManager(log, committers).recover((database, operation) ->
+          dispatchOperation(Operations.typed(operation), committers.get(database).getConnection(), new ReplyBuilder(),
+              null));
+      loadSnapshots();
+    } catch (IOException | SQLException e) {
+      throw new IllegalStateException("Recovery failed", e);
+    }
+    for (GroupCommitter committer : committers.values()) {
+      committer.start();
+    }
+    coordinator = new TwoPhaseCommitCoordinator(committers, log);
+    concurrencyControl = ConcurrencyControl.fromSystemProperty();
+    System.out.println("Concurrency control: " + concurrencyControl.getClass().getSimpleName());
+    System.out.println("Transactions run on " + executor);
+  }
 
-        for (Variable variable : write) {
-          writeLocks.put(variable, transaction);
-        }
+  /**
+   * Queues the transaction, converting its operations to their typed form first if the client sent them as strings.
+   */
+  public void addTransaction(Transaction transaction, StreamObserver<TransactionReply> responseObserver) {
+    long received = System.nanoTime();
+    try {
+      transaction = Operations.typed(transaction);
+    } catch (IllegalArgumentException e) {
+      String transactionFailMessage = "Transaction " + transaction.getId() + " failed at " + new Date(System.currentTimeMillis());
+      logger.log(Level.FINE, "{0}: malformed operation", transactionFailMessage);
+      failedTransactions.increment();
+      sendReply(responseObserver, new ReplyBuilder(transactionFailMessage), false);
+      return;
+    }
+    Transaction typedTransaction = transaction;
+    try {
+      if (isSnapshotTransaction(typedTransaction)) {
+        executor.submit(() -> runSnapshotTransaction(typedTransaction, received, responseObserver));
+      } else {
+        RunningTransaction runningTransaction = new RunningTransaction(typedTransaction);
+        executor.submit(() -> runTransaction(runningTransaction, responseObserver));
+      }
+    } catch (RejectedExecutionException e) {
+      logger.log(Level.FINE, "Transaction {0} rejected, {1} transactions queued",
+          new Object[] {transaction.getId(), executor.getQueueDepth()});
+      responseObserver.onError(Status.RESOURCE_EXHAUSTED
+          .withDescription("Transaction queue is full, retry later")
+          .asRuntimeException());
+    }
+  }
 
-        for (Variable variable : read) {
-          readLocks.computeIfAbsent(variable, k -> new ArrayList<>());
-          readLocks.get(variable).add(transaction);
-        }
-        reentrantLock.unlock();
-        System.out.println("All locks for " + transaction.getId() + " acquired at " + new Date(System.currentTimeMillis()));
-
-        for (Operation operation : transaction.getOperationsList()) {
-          if (isReadOperation(operation)) {
-            List<Operation> operationsForRead = variableToReadOperation.computeIfAbsent(operation.getVariable(), k -> new ArrayList<>());
-            operationsForRead.add(operation);
-          } else {
-            List<Operation> operationsForWrite = variableToWriteOperation.computeIfAbsent(operation.getVariable(), k -> new ArrayList<>());
-            operationsForWrite.add(operation);
-          }
-        }
+  /**
+   * Lets the queued transactions finish, then stops the group committers and the concurrency control and closes the
+   * writer connections, the log and the idle pooled connections. Transactions restarted after this point are rejected.
+   */
+  public void shutdown() throws InterruptedException {
+    restartScheduler.shutdown();
+    executor.shutdown(10, TimeUnit.SECONDS);
+    for (GroupCommitter committer : committers.values()) {
+      committer.stop();
+    }
+    concurrencyControl.shutdown();
+    try {
+      log.close();
+    } catch (IOException e) {
+      System.err.println("Closing " + log.getPath() + " failed: " + e.getMessage());
+    }
+    for (ConnectionPool pool : pools.values()) {
+      pool.close();
+    }
+  }
 
-        for (Operation operation : transaction.getOperationsList()) {
-          runOperation(operation, messageBuilder, reverseOperations);
-
-          Variable operationVariable = operation.getVariable();
-          if (isReadOperation(operation)) {
-            variableToReadOperation.get(operationVariable).remove(operation);
-            if (variableToReadOperation.get(operationVariable).size() == 0) {
-              reentrantLock.lock();
-              if (readLocks.get(operationVariable) != null && readLocks.get(operationVariable).contains(transaction)) {
-                readLocks.get(operationVariable).remove(transaction);
-              }
-              reentrantLock.unlock();
-            }
-          } else {
-            variableToWriteOperation.get(operationVariable).remove(operation);
-            if (variableToWriteOperation.get(operationVariable).size() == 0) {
-              reentrantLock.lock();
-              if (writeLocks.get(operationVariable) != null && writeLocks.get(operationVariable) == transaction) {
-                writeLocks.put(operationVariable, null);
-              }
-              reentrantLock.unlock();
-            }
-          }
-        }
-        messageBuilder.append("Success!");
+  public TransactionExecutor getExecutor() {
+    return executor;
+  }
 
-        System.out.println("All operations run for " + transaction.getId() + " at " + new Date(System.currentTimeMillis()));
+  public ConcurrencyControl getConcurrencyControl() {
+    return concurrencyControl;
+  }
 
-        sendReply(responseObserver, messageBuilder);
-        System.out.println("All locks released from " + transaction.getId());
-        break;
-      }
-    } catch (OperationException | IllegalArgumentException e) {
-      String transactionFailMessage = "Transaction " + transaction.getId() + " failed at " + new Date(System.currentTimeMillis());
-      System.out.println(transactionFailMessage + ". Rollback!");
+  public long getCommittedTransactions() {
+    return committedTransactions.sum();
+  }
 
-      try {
-        for (int i = reverseOperations.size() - 1; i >= 0; i--) {
-          Operation reverserOperation = reverseOperations.get(i);
-          runOperation(reverserOperation, messageBuilder, null);
-        }
-      } catch (OperationException rollbackException) {
-        System.err.println(rollbackException.getMessage());
-      }
-      releaseLocks(transaction);
-      messageBuilder = new StringBuilder();
-      messageBuilder.append(transactionFailMessage);
-      sendReply(responseObserver, messageBuilder);
-    }
+  public long getRestartedTransactions() {
+    return restartedTransactions.sum();
   }
 
-  private boolean isReadOperation(Operation operation) {
-    return operation.getInstruction().equals("R");
+  public long getFailedTransactions() {
+    return failedTransactions.sum();
   }
 
-  private void sendReply(StreamObserver<TransactionReply> responseObserver, StringBuilder messageBuilder) {
-    TransactionReply reply = TransactionReply.newBuilder().setMessage(messageBuilder.toString()).build();
-    responseObserver.onNext(reply);
-    responseObserver.onCompleted();
+  public TransactionMetrics getMetrics() {
+    return metrics;
   }
 
-  private void releaseLocks(Transaction transaction) {
-    reentrantLock.lock();
-    for (Variable variable : writeLocks.keySet()) {
-      if (writeLocks.get(variable) != null && writeLocks.get(variable) == transaction) {
-        writeLocks.put(variable, null);
-      }
-      if (readLocks.get(variable) != null && readLocks.get(variable).contains(transaction)) {
-        readLocks.get(variable).remove(transaction);
-      }
-    }
-    reentrantLock.unlock();
+  public Collection<ConnectionPool> getConnectionPools() {
+    return pools.values();
   }
 
-  private void runOperation(Operation operation, StringBuilder messageBuilder, List<Operation> reverseOperations) throws OperationException {
-    AirlinesManager airlinesManager = new AirlinesManager();
-    HotelsManager hotelsManager = new HotelsManager();
-    UsersManager usersManager = new UsersManager();
+  public ConnectionPool getConnectionPool(Database database) {
+    return pools.get(database);
+  }
 
-    if (isRouteOperation(operation)) {
-      handleRouteOperation(operation, airlinesManager, reverseOperations, messageBuilder);
-    } else if (isFlightOperation(operation)) {
-      handleFlightOperation(operation, airlinesManager, reverseOperations, messageBuilder);
-    } else if (isHotelOperation(operation)) {
-      handleHotelOperations(operation, hotelsManager, reverseOperations, messageBuilder);
-    } else if (isUserOperation(operation)) {
-      handleUserOperation(operation, usersManager, reverseOperations, messageBuilder);
-    } else if (isHotelReservationOperation(operation)) {
-      handleHotelReservationOperation(operation, usersManager, reverseOperations, messageBuilder);
-    }
+  public Collection<GroupCommitter> getGroupCommitters() {
+    return committers.values();
+  }
 
-    airlinesManager.close();
-    hotelsManager.close();
-    usersManager.close();
+  public TwoPhaseCommitCoordinator getCoordinator() {
+    return coordinator;
   }
 
-  private void handleHotelReservationOperation(Operation operation, UsersManager usersManager, List<Operation> reverseOperations,
-                                               StringBuilder messageBuilder) throws OperationException {
-    Operation reverseOperation;
-    if (isReadOperation(operation)) {
+  public SnapshotStore getSnapshotStore() {
+    return snapshotStore;
+  }
 
-    } else if (operation.getInstruction().equals("W")) {
-      OperationParameters parameters = operation.getParameters();
+  public SearchCache<List<Flight>> getFlightSearchCache() {
+    return flightSearches;
+  }
 
-      if (parameters.getParametersCount() != 5) {
-        throw new IllegalArgumentException();
-      }
+  public SearchCache<List<Hotel>> getHotelSearchCache() {
+    return hotelSearches;
+  }
 
-      int userId = Integer.parseInt(parameters.getParameters(0));
-      int hotelId = Integer.parseInt(parameters.getParameters(1));
-      Timestamp arrival = new Timestamp(Long.parseLong(parameters.getParameters(2)));
-      Timestamp departure = new Timestamp(Long.parseLong(parameters.getParameters(3)));
-      int noRooms = Integer.parseInt(parameters.getParameters(4));
-
-      if (reverseOperations != null) {
-        reverseOperation = Operation.newBuilder().
-            setVariable(operation.getVariable()).
-            setInstruction("D").
-            setParameters(OperationParameters.newBuilder().addParameters(userId + "").
-                addParameters(hotelId + "").
-                build()).
-            build();
-        reverseOperations.add(reverseOperation);
+  /**
+   * Loads the committed flights, keyed by route, and hotels, keyed by id, as the first version of the snapshot store.
+   */
+  private void loadSnapshots() throws SQLException {
+    ConnectionPool airlinesPool = pools.get(Database.AIRLINES);
+    PooledConnection airlinesConnection = airlinesPool.borrow();
+    try {
+      Map<Integer, List<Flight>> flights = new TreeMap<>();
+      for (Flight flight : new AirlinesManager(airlinesConnection).getAllFlights()) {
+        flights.computeIfAbsent(flight.getRoute().getId(), routeId -> new ArrayList<>()).add(flight);
       }
-      usersManager.reserveHotel(new HotelReservation(userId, hotelId, arrival, departure, noRooms));
-      messageBuilder.append("User ").append(userId).append(" reserved a room at hotel ").append(hotelId).append("\n");
-    } else if (operation.getInstruction().equals("D")) {
-      OperationParameters parameters = operation.getParameters();
+      snapshotStore.load("flights", flights);
+    } finally {
+      airlinesPool.release(airlinesConnection);
+    }
 
-      if (parameters.getParametersCount() != 2) {
-        throw new IllegalArgumentException();
+    ConnectionPool hotelsPool = pools.get(Database.HOTELS);
+    PooledConnection hotelsConnection = hotelsPool.borrow();
+    try {
+      Map<Integer, List<Hotel>> hotels = new TreeMap<>();
+      for (Hotel hotel : new HotelsManager(hotelsConnection).getAllHotels()) {
+        hotels.computeIfAbsent(hotel.getId(), hotelId -> new ArrayList<>()).add(hotel);
       }
+      snapshotStore.load("hotels", hotels);
+    } finally {
+      hotelsPool.release(hotelsConnection);
+    }
+  }
 
-      int userId = Integer.parseInt(parameters.getParameters(0));
-      int hotelId = Integer.parseInt(parameters.getParameters(1));
-
-      HotelReservation hotelReservation = usersManager.getHotelReservation(userId, hotelId);
-      if (reverseOperations != null) {
-        reverseOperation = Operation.newBuilder().
-            setVariable(operation.getVariable()).
-            setInstruction("W").
-            setParameters(OperationParameters.newBuilder().addParameters(userId + "").
-                addParameters(hotelId + "").
-                addParameters(hotelReservation.getArrival().getTime() + "").
-                addParameters(hotelReservation.getDeparture().getTime() + "").
-                addParameters(hotelReservation.getNoRooms() + "").
-                build()).
-            build();
-        reverseOperations.add(reverseOperation);
+  /**
+   * A transaction made only of reads of versioned tables runs on a snapshot, without locks.
+   */
+  private boolean isSnapshotTransaction(Transaction transaction) {
+    if (transaction.getOperationsCount() == 0) {
+      return false;
+    }
+    for (Operation operation : transaction.getOperationsList()) {
+      String table = Operations.tableName(operation.getTable());
+      if (!isReadOperation(operation) || table == null || !snapshotStore.isVersioned(table)) {
+        return false;
       }
-      usersManager.removeHotelReservation(userId, hotelId);
-      messageBuilder.append("User ").append(userId).append(" removed reserved rooms at hotel ").append(hotelId).append("\n");
     }
+    return true;
   }
 
-  private void handleUserOperation(Operation operation, UsersManager usersManager, List<Operation> reverseOperations,
-                                   StringBuilder messageBuilder) throws OperationException {
-    Operation reverseOperation = null;
-    if (isReadOperation(operation)) {
-      List<User> users = usersManager.getAllUsers();
-      messageBuilder.append(users).append("\n");
-    } else if (operation.getInstruction().equals("W")) {
-      OperationParameters parameters = operation.getParameters();
-
-      if (parameters.getParametersCount() != 3) {
-        throw new IllegalArgumentException();
+  private void runSnapshotTransaction(Transaction transaction, long received,
+                                      StreamObserver<TransactionReply> responseObserver) {
+    ReplyBuilder replyBuilder = new ReplyBuilder();
+    long snapshot = snapshotStore.beginSnapshot();
+    try {
+      for (Operation operation : transaction.getOperationsList()) {
+        readSnapshot(operation, snapshot, replyBuilder);
       }
+      logger.log(Level.FINE, "All operations run for {0} on snapshot {1}", new Object[] {transaction.getId(), snapshot});
+      replyBuilder.append("Success!");
+    } finally {
+      snapshotStore.endSnapshot(snapshot);
+    }
+    sendReply(responseObserver, replyBuilder, true);
+    metrics.getCommittedDuration().recordSince(received);
+  }
 
-      User user = new User(Integer.parseInt(parameters.getParameters(0)), parameters.getParameters(1), Integer.parseInt(parameters.getParameters(2)));
-      if (reverseOperations != null) {
-        reverseOperation = Operation.newBuilder().
-            setVariable(operation.getVariable()).
-            setInstruction("D").
-            setParameters(OperationParameters.newBuilder().addParameters(user.getId() + "").build()).
-            build();
+  private void readSnapshot(Operation operation, long snapshot, ReplyBuilder replyBuilder) {
+    String destination = operation.getSearch().getDestination();
+    switch (operation.getTable()) {
+      case FLIGHTS: {
+        List<Flight> flights = snapshotStore.read("flights", snapshot);
+        if (operation.hasSearch()) {
+          flights.removeIf(flight -> !flight.getRoute().getDestination().equals(destination));
+        }
+        replyBuilder.addFlights(flights);
+        break;
       }
-      usersManager.addUser(user);
-      if (reverseOperation != null) {
-        reverseOperations.add(reverseOperation);
+      case HOTELS: {
+        List<Hotel> hotels = snapshotStore.read("hotels", snapshot);
+        if (operation.hasSearch()) {
+          hotels.removeIf(hotel -> !hotel.getCity().equals(destination));
+        }
+        replyBuilder.addHotels(hotels);
+        break;
       }
-      messageBuilder.append("User ").append(user.getName()).append(" added!").append("\n");
+      default:
+        break;
     }
   }
 
-  private void handleHotelOperations(Operation operation, HotelsManager hotelsManager, List<Operation> reverseOperations,
-                                     StringBuilder messageBuilder) {
-    if (isReadOperation(operation)) {
-      OperationParameters parameters = operation.getParameters();
-
-      if (parameters.getParametersCount() == 0) {
-        List<Hotel> hotels = hotelsManager.getAllHotels();
-        messageBuilder.append(hotels).append("\n");
-      } else if (parameters.getParametersCount() == 1) {
-        List<Hotel> hotels = hotelsManager.getHotels(parameters.getParameters(0));
-        messageBuilder.append(hotels).append("\n");
-      } else {
-        throw new IllegalArgumentException();
+  /**
+   * Drops the cached flight searches of every destination whose flights the committed transaction changed, either
+   * directly or through their route. It runs before the transaction releases its locks, so no search can cache the
+   * previous flights in between.
+   */
+  private void invalidateSearches(RunningTransaction runningTransaction, List<Operation> reverseOperations) {
+    Set<String> destinations = new HashSet<>();
+    Set<Integer> routes = new TreeSet<>();
+    for (Operation operation : runningTransaction.getTransaction().getOperationsList()) {
+      if (isReadOperation(operation)) {
+        continue;
+      }
+      if (operation.getTable() == Table.FLIGHTS) {
+        routes.add(operation.getFlight().getRouteId());
+      } else if (operation.getTable() == Table.ROUTES && operation.getType() == OperationType.WRITE) {
+        destinations.add(operation.getRoute().getDestination());
       }
     }
-  }
-
-  private void handleFlightOperation(Operation operation, AirlinesManager airlinesManager, List<Operation> reverseOperations,
-                                     StringBuilder messageBuilder) {
-    Operation reverseOperation = null;
-    if (isReadOperation(operation)) {
-      OperationParameters parameters = operation.getParameters();
-
-      if (parameters.getParametersCount() == 0) {
-        List<Flight> flights = airlinesManager.getAllFlights();
-        messageBuilder.append(flights).append("\n");
-      } else if (parameters.getParametersCount() == 1) {
-        List<Flight> flights = airlinesManager.getFlights(parameters.getParameters(0));
-        messageBuilder.append(flights).append("\n");
-      } else {
-        throw new IllegalArgumentException();
+    // The inverse of a route delete remembers the destination of the deleted route
+    for (Operation reverseOperation : reverseOperations) {
+      if (reverseOperation.getTable() == Table.ROUTES && reverseOperation.getType() == OperationType.WRITE) {
+        destinations.add(reverseOperation.getRoute().getDestination());
       }
-    } else if (operation.getInstruction().equals("W")) {
-      OperationParameters parameters = operation.getParameters();
-
-      if (parameters.getParametersCount() != 3) {
-        throw new IllegalArgumentException();
+    }
+    if (!routes.isEmpty()) {
+      try {
+        query(Database.AIRLINES, connection -> {
+          AirlinesManager airlinesManager = new AirlinesManager(connection);
+          for (int routeId : routes) {
+            Route route = airlinesManager.getRoute(routeId);
+            if (route != null) {
+              destinations.add(route.getDestination());
+            }
+          }
+          return null;
+        });
+      } catch (OperationException e) {
+        System.err.println("Looking up the routes written by " + runningTransaction + " failed: " + e.getMessage());
+        flightSearches.invalidateAll();
+        return;
       }
+    }
+    flightSearches.invalidate(destinations);
+  }
 
-      int routeId = Integer.parseInt(parameters.getParameters(0));
-      Timestamp departure = new Timestamp(Long.parseLong(parameters.getParameters(1)));
-      Timestamp arrival = new Timestamp(Long.parseLong(parameters.getParameters(2)));
-
-      Flight flight = new Flight(routeId, departure, arrival);
+  /**
+   * Runs the query on a connection borrowed from the pool of the database.
+   */
+  private <T> T query(Database database, Function<PooledConnection, T> query) throws OperationException {
+    ConnectionPool pool = pools.get(database);
+    PooledConnection connection;
+    try {
+      connection = pool.borrow();
+    } catch (SQLException e) {
+      throw new OperationException(e.getMessage());
+    }
+    try {
+      return query.apply(connection);
+    } finally {
+      pool.release(connection);
+    }
+  }
 
-      if (reverseOperations != null) {
-        reverseOperation = Operation.newBuilder().
-            setVariable(operation.getVariable()).
-            setInstruction("D").
-            setParameters(OperationParameters.newBuilder().addParameters(flight.getRoute().getId() + "").
-                addParameters(flight.getDeparture().getTime() + "").
-                addParameters(flight.getDeparture().getTime() + "")).build();
+  /**
+   * Installs the new versions of the flights of every route the committed transaction wrote to, either through its
+   * flights or through the route itself. It runs while the transaction still holds the flights row lock of each of
+   * those routes, and pooled connections only see committed writes, so the versions read are exactly what it committed.
+   */
+  private void installSnapshots(RunningTransaction runningTransaction) {
+    Set<Integer> routes = new TreeSet<>();
+    for (Operation operation : runningTransaction.getTransaction().getOperationsList()) {
+      if (isReadOperation(operation)) {
+        continue;
       }
-      airlinesManager.addFlight(flight);
-      if (reverseOperation != null) {
-        reverseOperations.add(reverseOperation);
+      if (operation.getTable() == Table.FLIGHTS) {
+        routes.add(operation.getFlight().getRouteId());
+      } else if (operation.getTable() == Table.ROUTES) {
+        routes.add(operation.getRoute().getId());
       }
-      messageBuilder.append("Flight successfully added!\n");
-    } else if (operation.getInstruction().equals("D")) {
-      OperationParameters parameters = operation.getParameters();
+    }
+    if (routes.isEmpty()) {
+      return;
+    }
+    try {
+      snapshotStore.install(Collections.singletonMap("flights", routes), (table, routeId) ->
+          query(Database.AIRLINES, connection -> new AirlinesManager(connection).getRouteFlights(routeId)));
+    } catch (OperationException e) {
+      System.err.println("Installing the versions written by " + runningTransaction + " failed: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Runs the transaction under the configured {@link ConcurrencyControl}, which is asked for every operation before it
+   * runs and told once the transaction committed or was rolled back. Transactions it aborts are restarted.
+   */
+  private void runTransaction(RunningTransaction runningTransaction, StreamObserver<TransactionReply> responseObserver) {
+    Transaction transaction = runningTransaction.getTransaction();
+    ReplyBuilder replyBuilder = new ReplyBuilder();
 
-      if (parameters.getParametersCount() != 3) {
-        throw new IllegalArgumentException();
+    try {
+      for (Operation operation : transaction.getOperationsList()) {
+        long waitStart = System.nanoTime();
+        concurrencyControl.beforeOperation(runningTransaction, operation);
+        metrics.getLockWait().recordSince(waitStart);
+
+        long operationStart = System.nanoTime();
+        runOperation(runningTransaction, operation, replyBuilder);
+        metrics.recordOperation(operation.getTable(), operation.getType(), operationStart);
+        runningTransaction.operationExecuted();
       }
+      logger.log(Level.FINE, "All operations run for {0}", transaction.getId());
+
+      long commitStart = System.nanoTime();
+      List<Operation> reverseOperations = coordinator.commit(runningTransaction);
+      metrics.getCommitTime().recordSince(commitStart);
+      invalidateSearches(runningTransaction, reverseOperations);
+      installSnapshots(runningTransaction);
+      committedTransactions.increment();
+      replyBuilder.append("Success!");
+
+      sendReply(responseObserver, replyBuilder, true);
+      metrics.getCommittedDuration().recordSince(runningTransaction.getStartNanos());
+      concurrencyControl.finish(runningTransaction);
+    } catch (TransactionAbortedException e) {
+      logger.log(Level.FINE, "{0}. Rollback and restart!", e.getMessage());
+
+      rollback(runningTransaction);
+      concurrencyControl.finish(runningTransaction);
+      restartedTransactions.increment();
+      RunningTransaction restartedTransaction = runningTransaction.restart();
+      resubmit(() -> runTransaction(restartedTransaction, responseObserver),
+          concurrencyControl.restartDelayMillis(runningTransaction));
+    } catch (OperationException | IllegalArgumentException | InterruptedException e) {
+      String transactionFailMessage = "Transaction " + transaction.getId() + " failed at " + new Date(System.currentTimeMillis());
+      logger.log(Level.FINE, "{0}. Rollback!", transactionFailMessage);
 
-      int routeId = Integer.parseInt(parameters.getParameters(0));
-      Timestamp departure = new Timestamp(Long.parseLong(parameters.getParameters(1)));
-      Timestamp arrival = new Timestamp(Long.parseLong(parameters.getParameters(2)));
+      rollback(runningTransaction);
+      concurrencyControl.finish(runningTransaction);
+      failedTransactions.increment();
+      sendReply(responseObserver, new ReplyBuilder(transactionFailMessage), false);
+      metrics.getFailedDuration().recordSince(runningTransaction.getStartNanos());
+    }
+  }
 
-      Flight flight = new Flight(routeId, departure, arrival);
+  /**
+   * Queues a restarted transaction after the delay. It was admitted already, so a full queue only postpones it.
+   */
+  private void resubmit(Runnable task, long delay) {
+    if (delay > 0) {
+      restartScheduler.schedule(() -> resubmit(task, 0), delay, TimeUnit.MILLISECONDS);
+      return;
+    }
+    try {
+      executor.submit(task);
+    } catch (RejectedExecutionException e) {
+      restartScheduler.schedule(() -> resubmit(task, 0), RESUBMIT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
 
-      if (reverseOperations != null) {
-        reverseOperation = Operation.newBuilder().
-            setVariable(operation.getVariable()).
-            setInstruction("W").
-            setParameters(OperationParameters.newBuilder().addParameters(flight.getRoute().getId() + "").
-                addParameters(flight.getDeparture().getTime() + "").
-                addParameters(flight.getDeparture().getTime() + "")).build();
-      }
-      airlinesManager.removeFlight(flight);
-      if (reverseOperation != null) {
-        reverseOperations.add(reverseOperation);
-      }
-      messageBuilder.append("Flight successfully removed!\n");
+  /**
+   * Drops the writes of the failed attempt. They were never applied outside of a rolled back savepoint, or were rolled
+   * back by their group committer, so nobody can have read them.
+   */
+  private void rollback(RunningTransaction runningTransaction) {
+    long rollbackStart = System.nanoTime();
+    for (Database database : runningTransaction.getWrittenDatabases()) {
+      runningTransaction.getWrites(database).clear();
     }
+    metrics.getRollbackTime().recordSince(rollbackStart);
   }
 
-  private void handleRouteOperation(Operation operation, AirlinesManager airlinesManager, List<Operation> reverseOperations,
-                                    StringBuilder messageBuilder) {
-    Operation reverseOperation = null;
+  private boolean isReadOperation(Operation operation) {
+    return operation.getType() == OperationType.READ;
+  }
 
-    if (operation.getInstruction().equals("W")) {
-      OperationParameters parameters = operation.getParameters();
+  private void sendReply(StreamObserver<TransactionReply> responseObserver, ReplyBuilder replyBuilder,
+                         boolean success) {
+    TransactionReply reply = replyBuilder.build(success);
+    try {
+      responseObserver.onNext(reply);
+      responseObserver.onCompleted();
+    } catch (StatusRuntimeException e) {
+      // The client went away, the transaction still has to finish
+      System.err.println("Reply failed: " + e.getStatus());
+    }
+  }
 
-      if (parameters.getParametersCount() != 3) {
-        throw new IllegalArgumentException();
-      }
+  /**
+   * Stages writes and runs reads. Writes are only applied when the transaction commits, each exactly once, inside the
+   * savepoint its group committer opens for the transaction, see {@link GroupCommitter}: a write that fails there fails
+   * the transaction alone and nobody ever sees the writes of an uncommitted transaction. Reads run on a pooled
+   * connection, unless the transaction wrote to the operation's database, see {@link #readOwnWrites}.
+   */
+  private void runOperation(RunningTransaction runningTransaction, Operation operation, ReplyBuilder replyBuilder)
+      throws OperationException {
+    Database database = databaseOf(operation);
+    if (database == null) {
+      return;
+    }
 
-      Route route = new Route(Integer.parseInt(parameters.getParameters(0)), parameters.getParameters(1), parameters.getParameters(2));
-      if (reverseOperations != null) {
-        reverseOperation = Operation.newBuilder().
-            setVariable(operation.getVariable()).
-            setInstruction("D").
-            setParameters(OperationParameters.newBuilder().addParameters(route.getId() + "").build()).
-            build();
+    List<Operation> writes = runningTransaction.getWrites(database);
+    if (!isReadOperation(operation)) {
+      runningTransaction.addWrite(database, operation);
+    } else if (!writes.isEmpty()) {
+      readOwnWrites(database, writes, operation, replyBuilder);
+    } else if (isSearch(operation)) {
+      readSearch(operation, replyBuilder);
+    } else {
+      ConnectionPool pool = pools.get(database);
+      PooledConnection connection;
+      try {
+        connection = pool.borrow();
+      } catch (SQLException e) {
+        throw new OperationException(e.getMessage());
       }
-      airlinesManager.addRoute(route);
-      if (reverseOperation != null) {
-        reverseOperations.add(reverseOperation);
+      try {
+        dispatchOperation(operation, connection, replyBuilder, null);
+      } finally {
+        pool.release(connection);
       }
-      messageBuilder.append("Route successfully added!\n");
-    } else if (operation.getInstruction().equals("D")) {
-      OperationParameters parameters = operation.getParameters();
+    }
+  }
 
-      if (parameters.getParametersCount() != 1) {
-        throw new IllegalArgumentException();
+  /**
+   * Runs a read of a database the transaction wrote to on the writer connection of the database, after its staged
+   * writes, inside a savepoint that is rolled back afterwards, so the transaction sees its own writes and nobody else
+   * does. Only such reads pay for applying the staged writes; writes themselves are never run ahead of the commit.
+   */
+  private void readOwnWrites(Database database, List<Operation> writes, Operation operation, ReplyBuilder replyBuilder)
+      throws OperationException {
+    GroupCommitter committer = committers.get(database);
+    Connection connection = committer.getConnection().getConnection();
+    committer.lock();
+    try {
+      Savepoint savepoint = connection.setSavepoint();
+      try {
+        ReplyBuilder replayed = new ReplyBuilder();
+        for (Operation write : writes) {
+          dispatchOperation(write, committer.getConnection(), replayed, null);
+        }
+        dispatchOperation(operation, committer.getConnection(), replyBuilder, null);
+      } finally {
+        connection.rollback(savepoint);
+        connection.releaseSavepoint(savepoint);
       }
+    } catch (SQLException e) {
+      throw new OperationException(e.getMessage());
+    } finally {
+      committer.unlock();
+    }
+  }
 
-      int routeId = Integer.parseInt(parameters.getParameters(0));
-
-      if (reverseOperations != null) {
-        Route toDeleteRoute = airlinesManager.getRoute(routeId);
-        reverseOperation = Operation.newBuilder().
-            setVariable(operation.getVariable()).
-            setInstruction("W").
-            setParameters(OperationParameters.newBuilder().addParameters(toDeleteRoute.getId() + "").
-                addParameters(toDeleteRoute.getSource()).addParameters(toDeleteRoute.getDestination()).
-                build()).
-            build();
-      }
+  /**
+   * Applies a write of a committing transaction for its group committer and returns the inverse to log with it.
+   */
+  private Operation applyOperation(PooledConnection connection, Operation operation) throws OperationException {
+    List<Operation> reverseOperations = new ArrayList<>(1);
+    dispatchOperation(operation, connection, new ReplyBuilder(), reverseOperations);
+    return reverseOperations.isEmpty() ? null : reverseOperations.get(0);
+  }
+
+  private boolean isSearch(Operation operation) {
+    return isReadOperation(operation) && operation.hasSearch() &&
+        (operation.getTable() == Table.FLIGHTS || operation.getTable() == Table.HOTELS);
+  }
+
+  /**
+   * Serves a search of the committed flights or hotels from the search cache, loading it on a pooled connection on a
+   * miss. Transactions that wrote to the database search on their writer connection instead, to see their own writes.
+   */
+  private void readSearch(Operation operation, ReplyBuilder replyBuilder) throws OperationException {
+    String destination = operation.getSearch().getDestination();
+    if (operation.getTable() == Table.FLIGHTS) {
+      replyBuilder.addFlights(flightSearches.get(destination, () -> query(Database.AIRLINES, connection ->
+          Collections.unmodifiableList(new AirlinesManager(connection).getFlights(destination)))));
+    } else {
+      replyBuilder.addHotels(hotelSearches.get(destination, () -> query(Database.HOTELS, connection ->
+          Collections.unmodifiableList(new HotelsManager(connection).getHotels(destination)))));
+    }
+  }
+
+  private void dispatchOperation(Operation operation, PooledConnection connection, ReplyBuilder replyBuilder,
+                                 List<Operation> reverseOperations) throws OperationException {
+    switch (operation.getTable()) {
+      case ROUTES:
+        handleRouteOperation(operation, new AirlinesManager(connection), reverseOperations, replyBuilder);
+        break;
+      case FLIGHTS:
+        handleFlightOperation(operation, new AirlinesManager(connection), reverseOperations, replyBuilder);
+        break;
+      case HOTELS:
+        handleHotelOperations(operation, new HotelsManager(connection), reverseOperations, replyBuilder);
+        break;
+      case USERS:
+        handleUserOperation(operation, new UsersManager(connection), reverseOperations, replyBuilder);
+        break;
+      case HOTEL_RESERVATIONS:
+        handleHotelReservationOperation(operation, new UsersManager(connection), reverseOperations, replyBuilder);
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Returns the operation with the other of write and delete as its type and the given row.
+   */
+  private Operation inverse(Operation operation, Operation.Builder row) {
+    return row.setTable(operation.getTable())
+        .setType(operation.getType() == OperationType.WRITE ? OperationType.DELETE : OperationType.WRITE)
+        .build();
+  }
 
-      airlinesManager.removeRoute(routeId);
-      if (reverseOperation != null) {
-        reverseOperations.add(reverseOperation);
+  private void handleHotelReservationOperation(Operation operation, UsersManager usersManager, List<Operation> reverseOperations,
+                                               ReplyBuilder replyBuilder) throws OperationException {
+    HotelReservationRow row = operation.getHotelReservation();
+    switch (operation.getType()) {
+      case WRITE: {
+        if (reverseOperations != null) {
+          reverseOperations.add(inverse(operation, Operation.newBuilder().setHotelReservation(
+              HotelReservationRow.newBuilder().setUserId(row.getUserId()).setHotelId(row.getHotelId()))));
+        }
+        usersManager.reserveHotel(new HotelReservation(row.getUserId(), row.getHotelId(),
+            new Timestamp(row.getArrival()), new Timestamp(row.getDeparture()), row.getNoRooms()));
+        replyBuilder.append("User ").append(row.getUserId()).append(" reserved a room at hotel ").append(row.getHotelId()).append("\n");
+        break;
       }
-      messageBuilder.append("Route successfully removed!\n");
+      case DELETE: {
+        HotelReservation hotelReservation = usersManager.getHotelReservation(row.getUserId(), row.getHotelId());
+        if (reverseOperations != null && hotelReservation != null) {
+          reverseOperations.add(inverse(operation, Operation.newBuilder().setHotelReservation(
+              HotelReservationRow.newBuilder().setUserId(row.getUserId()).setHotelId(row.getHotelId())
+                  .setArrival(hotelReservation.getArrival().getTime())
+                  .setDeparture(hotelReservation.getDeparture().getTime())
+                  .setNoRooms(hotelReservation.getNoRooms()))));
+        }
+        usersManager.removeHotelReservation(row.getUserId(), row.getHotelId());
+        replyBuilder.append("User ").append(row.getUserId()).append(" removed reserved rooms at hotel ").append(row.getHotelId()).append("\n");
+        break;
+      }
+      default:
+        break;
     }
   }
 
-  private boolean isFlightOperation(Operation operation) {
-    return operation.getVariable().getId().equals("flights");
+  private void handleUserOperation(Operation operation, UsersManager usersManager, List<Operation> reverseOperations,
+                                   ReplyBuilder replyBuilder) throws OperationException {
+    UserRow row = operation.getUser();
+    Operation reverseOperation = null;
+    switch (operation.getType()) {
+      case READ: {
+        List<User> users = usersManager.getAllUsers();
+        replyBuilder.addUsers(users);
+        break;
+      }
+      case WRITE: {
+        User user = new User(row.getId(), row.getName(), row.getAge());
+        if (reverseOperations != null) {
+          reverseOperation = inverse(operation, Operation.newBuilder().setUser(UserRow.newBuilder().setId(user.getId())));
+        }
+        usersManager.addUser(user);
+        if (reverseOperation != null) {
+          reverseOperations.add(reverseOperation);
+        }
+        replyBuilder.append("User ").append(user.getName()).append(" added!").append("\n");
+        break;
+      }
+      case DELETE: {
+        if (reverseOperations != null) {
+          User toDeleteUser = usersManager.getUser(row.getId());
+          if (toDeleteUser != null) {
+            reverseOperation = inverse(operation, Operation.newBuilder().setUser(UserRow.newBuilder()
+                .setId(toDeleteUser.getId()).setName(toDeleteUser.getName()).setAge(toDeleteUser.getAge())));
+          }
+        }
+        usersManager.removeUser(row.getId());
+        if (reverseOperation != null) {
+          reverseOperations.add(reverseOperation);
+        }
+        replyBuilder.append("User ").append(row.getId()).append(" removed!").append("\n");
+        break;
+      }
+      default:
+        break;
+    }
   }
 
-  private boolean isRouteOperation(Operation operation) {
-    return operation.getVariable().getId().equals("routes");
+  private void handleHotelOperations(Operation operation, HotelsManager hotelsManager, List<Operation> reverseOperations,
+                                     ReplyBuilder replyBuilder) {
+    if (operation.getType() == OperationType.READ) {
+      List<Hotel> hotels = operation.hasSearch() ?
+          hotelsManager.getHotels(operation.getSearch().getDestination()) : hotelsManager.getAllHotels();
+      replyBuilder.addHotels(hotels);
+    }
   }
 
-  private boolean isHotelOperation(Operation operation) {
-    return operation.getVariable().getId().equals("hotels");
+  private void handleFlightOperation(Operation operation, AirlinesManager airlinesManager, List<Operation> reverseOperations,
+                                     ReplyBuilder replyBuilder) {
+    FlightRow row = operation.getFlight();
+    Operation reverseOperation = null;
+    switch (operation.getType()) {
+      case READ: {
+        List<Flight> flights = operation.hasSearch() ?
+            airlinesManager.getFlights(operation.getSearch().getDestination()) : airlinesManager.getAllFlights();
+        replyBuilder.addFlights(flights);
+        break;
+      }
+      case WRITE: {
+        Flight flight = new Flight(row.getRouteId(), new Timestamp(row.getDeparture()), new Timestamp(row.getArrival()));
+        if (reverseOperations != null) {
+          reverseOperation = inverse(operation, Operation.newBuilder().setFlight(row));
+        }
+        airlinesManager.addFlight(flight);
+        if (reverseOperation != null) {
+          reverseOperations.add(reverseOperation);
+        }
+        replyBuilder.append("Flight successfully added!\n");
+        break;
+      }
+      case DELETE: {
+        Flight flight = new Flight(row.getRouteId(), new Timestamp(row.getDeparture()), new Timestamp(row.getArrival()));
+        if (reverseOperations != null) {
+          reverseOperation = inverse(operation, Operation.newBuilder().setFlight(row));
+        }
+        airlinesManager.removeFlight(flight);
+        if (reverseOperation != null) {
+          reverseOperations.add(reverseOperation);
+        }
+        replyBuilder.append("Flight successfully removed!\n");
+        break;
+      }
+      default:
+        break;
+    }
   }
 
-  private boolean isUserOperation(Operation operation) {
-    return operation.getVariable().getId().equals("users");
+  private void handleRouteOperation(Operation operation, AirlinesManager airlinesManager, List<Operation> reverseOperations,
+                                    ReplyBuilder replyBuilder) {
+    RouteRow row = operation.getRoute();
+    Operation reverseOperation = null;
+    switch (operation.getType()) {
+      case WRITE: {
+        Route route = new Route(row.getId(), row.getSource(), row.getDestination());
+        if (reverseOperations != null) {
+          reverseOperation = inverse(operation, Operation.newBuilder().setRoute(RouteRow.newBuilder().setId(route.getId())));
+        }
+        airlinesManager.addRoute(route);
+        if (reverseOperation != null) {
+          reverseOperations.add(reverseOperation);
+        }
+        replyBuilder.append("Route successfully added!\n");
+        break;
+      }
+      case DELETE: {
+        if (reverseOperations != null) {
+          Route toDeleteRoute = airlinesManager.getRoute(row.getId());
+          if (toDeleteRoute != null) {
+            reverseOperation = inverse(operation, Operation.newBuilder().setRoute(RouteRow.newBuilder()
+                .setId(toDeleteRoute.getId()).setSource(toDeleteRoute.getSource())
+                .setDestination(toDeleteRoute.getDestination())));
+          }
+        }
+        airlinesManager.removeRoute(row.getId());
+        if (reverseOperation != null) {
+          reverseOperations.add(reverseOperation);
+        }
+        replyBuilder.append("Route successfully removed!\n");
+        break;
+      }
+      default:
+        break;
+    }
   }
 
-  private boolean isHotelReservationOperation(Operation operation) {
-    return operation.getVariable().getId().equals("hotel_reservations");
+  /**
+   * Returns the database holding the table of the operation, or null for an unknown table.
+   */
+  private Database databaseOf(Operation operation) {
+    switch (operation.getTable()) {
+      case ROUTES:
+      case FLIGHTS:
+        return Database.AIRLINES;
+      case HOTELS:
+        return Database.HOTELS;
+      case USERS:
+      case HOTEL_RESERVATIONS:
+        return Database.USERS;
+      default:
+        return null;
+    }
   }
 
 }
@@ -0,0 +1,83 @@
+package transactionmanager;
+
+import server.OperationType;
+import server.Table;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Where transactions spend their time, phase by phase: waiting for the concurrency control to let each operation run,
+ * running it against the database, committing or rolling back, and from arrival to reply. The time spent queued for a worker is
+ * kept by the {@link TransactionExecutor}.
+ */
+public class TransactionMetrics {
+
+  private final Histogram lockWait = new Histogram();
+  private final Histogram commitTime = new Histogram();
+  private final Histogram rollbackTime = new Histogram();
+  private final Histogram committedDuration = new Histogram();
+  private final Histogram failedDuration = new Histogram();
+  private final Map<Table, Map<OperationType, Histogram>> operationTimes = new EnumMap<>(Table.class);
+
+  public TransactionMetrics() {
+    for (Table table : Table.values()) {
+      if (table == Table.UNRECOGNIZED || table == Table.TABLE_UNSPECIFIED) {
+        continue;
+      }
+      Map<OperationType, Histogram> histograms = new EnumMap<>(OperationType.class);
+      for (OperationType type : OperationType.values()) {
+        if (type != OperationType.UNRECOGNIZED && type != OperationType.OPERATION_TYPE_UNSPECIFIED) {
+          histograms.put(type, new Histogram());
+        }
+      }
+      operationTimes.put(table, Collections.unmodifiableMap(histograms));
+    }
+  }
+
+  /**
+   * Time an operation waited for its locks, or under timestamp ordering for older writers to finish.
+   */
+  public Histogram getLockWait() {
+    return lockWait;
+  }
+
+  /**
+   * Records the time an operation took to run, including the SQL statements and the write-ahead log record of a write.
+   */
+  public void recordOperation(Table table, OperationType type, long startNanos) {
+    Map<OperationType, Histogram> histograms = operationTimes.get(table);
+    Histogram histogram = histograms == null ? null : histograms.get(type);
+    // Operations on no known table or of no known type run nothing
+    if (histogram != null) {
+      histogram.recordSince(startNanos);
+    }
+  }
+
+  public Map<Table, Map<OperationType, Histogram>> getOperationTimes() {
+    return Collections.unmodifiableMap(operationTimes);
+  }
+
+  /**
+   * Time the two-phase commit of a transaction took, including the wait for its group commits.
+   */
+  public Histogram getCommitTime() {
+    return commitTime;
+  }
+
+  public Histogram getRollbackTime() {
+    return rollbackTime;
+  }
+
+  /**
+   * Time from the arrival of a transaction to its reply, across all its attempts.
+   */
+  public Histogram getCommittedDuration() {
+    return committedDuration;
+  }
+
+  public Histogram getFailedDuration() {
+    return failedDuration;
+  }
+}
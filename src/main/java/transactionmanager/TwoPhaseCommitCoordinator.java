@@ -0,0 +1,181 @@
+package transactionmanager;
+
+import data.Database;
+import data.OperationException;
+import server.Operation;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Commits the writes of transactions through the group committers of the databases they wrote to. A transaction that
+ * wrote to more than one database commits in two phases. In the prepare phase every participant applies its part and
+ * logs it, but keeps it uncommitted. Once all of them prepared, the commit decision is forced to the
+ * {@link WriteAheadLog}, and only then do the participants commit; if one of them failed, the others roll their part
+ * back instead. A transaction without a durable decision is undone on recovery, and a committed one is redone wherever
+ * its writes did not make it to the database.
+ * <p>
+ * A prepared participant holds its writer connection until the decision, which stalls the group commits of every
+ * other transaction on that database for the length of one distributed commit: distributed transactions bound the
+ * throughput of the databases they span. TransactionManagerBenchmark measures it with its {@code distributedRate}.
+ */
+public class TwoPhaseCommitCoordinator {
+
+  private static final Logger logger = Logger.getLogger(TwoPhaseCommitCoordinator.class.getName());
+
+  private final Map<Database, GroupCommitter> participants;
+  private final WriteAheadLog log;
+  // A prepared participant holds its writer connection until the decision, so two transactions preparing on the same
+  // databases at the same time could each wait for a participant held by the other. They take the locks of their
+  // databases in database order instead, so transactions spanning disjoint databases still prepare concurrently.
+  private final Map<Database, ReentrantLock> prepareLocks = new EnumMap<>(Database.class);
+
+  private final LongAdder distributedCommits = new LongAdder();
+  private final LongAdder totalPrepareNanos = new LongAdder();
+  private final LongAdder totalCommitNanos = new LongAdder();
+
+  public TwoPhaseCommitCoordinator(Map<Database, GroupCommitter> participants, WriteAheadLog log) {
+    this.participants = participants;
+    this.log = log;
+    for (Database database : participants.keySet()) {
+      prepareLocks.put(database, new ReentrantLock());
+    }
+  }
+
+  /**
+   * Returns the inverses of the operations the transaction applied.
+   */
+  public List<Operation> commit(RunningTransaction transaction) throws OperationException {
+    Set<Database> databases = transaction.getWrittenDatabases();
+    if (databases.isEmpty()) {
+      return Collections.emptyList();
+    }
+    if (databases.size() == 1) {
+      // The decision is logged and forced by the group commit itself, before the database commits
+      return await(commitAll(transaction), transaction);
+    }
+    // Enum order, whatever the order the transaction wrote in
+    List<ReentrantLock> locks = new ArrayList<>();
+    for (Database database : EnumSet.copyOf(databases)) {
+      locks.add(prepareLocks.get(database));
+    }
+    for (ReentrantLock lock : locks) {
+      lock.lock();
+    }
+    try {
+      return commitDistributed(transaction);
+    } finally {
+      for (ReentrantLock lock : locks) {
+        lock.unlock();
+      }
+    }
+  }
+
+  private List<Operation> commitDistributed(RunningTransaction transaction) throws OperationException {
+    long start = System.nanoTime();
+    CompletableFuture<Boolean> decision = new CompletableFuture<>();
+    List<GroupCommitter.Request> prepares = new ArrayList<>();
+    List<CompletableFuture<List<Operation>>> results = new ArrayList<>();
+    for (Database database : transaction.getWrittenDatabases()) {
+      GroupCommitter.Request prepare = participants.get(database).prepare(transaction.getGlobalId(),
+          transaction.getWrites(database), decision);
+      prepares.add(prepare);
+      results.add(prepare.getResult());
+    }
+
+    List<Operation> inverses;
+    long prepared;
+    try {
+      inverses = await(results, transaction);
+      prepared = System.nanoTime();
+      log.force(appendCommit(transaction));
+      decision.complete(true);
+    } catch (IOException e) {
+      throw new OperationException("Logging the commit of " + transaction + " failed: " + e.getMessage());
+    } finally {
+      // Aborts unless the decision was forced
+      decision.complete(false);
+      awaitFinished(prepares, transaction);
+    }
+    long committed = System.nanoTime();
+
+    distributedCommits.increment();
+    totalPrepareNanos.add(prepared - start);
+    totalCommitNanos.add(committed - prepared);
+    if (logger.isLoggable(Level.FINE)) {
+      logger.fine("Transaction " + transaction.getId() + " prepared in " +
+          TimeUnit.NANOSECONDS.toMicros(prepared - start) + "us and committed in " +
+          TimeUnit.NANOSECONDS.toMicros(committed - prepared) + "us");
+    }
+    return inverses;
+  }
+
+  private long appendCommit(RunningTransaction transaction) throws OperationException {
+    try {
+      return log.appendCommit(transaction.getGlobalId());
+    } catch (IOException e) {
+      throw new OperationException("Logging the commit of " + transaction + " failed: " + e.getMessage());
+    }
+  }
+
+  private List<CompletableFuture<List<Operation>>> commitAll(RunningTransaction transaction) {
+    List<CompletableFuture<List<Operation>>> commits = new ArrayList<>();
+    for (Database database : transaction.getWrittenDatabases()) {
+      commits.add(participants.get(database).commit(transaction.getGlobalId(), transaction.getWrites(database), true));
+    }
+    return commits;
+  }
+
+  /**
+   * Waits until every participant carried out the decision. A participant that fails to commit after the decision was
+   * forced gets the writes back on recovery, so the transaction still counts as committed.
+   */
+  private void awaitFinished(List<GroupCommitter.Request> prepares, RunningTransaction transaction) {
+    for (GroupCommitter.Request prepare : prepares) {
+      try {
+        prepare.getFinished().join();
+      } catch (CompletionException e) {
+        System.err.println("Finishing " + transaction + " failed: " + e.getCause().getMessage());
+      }
+    }
+  }
+
+  private List<Operation> await(List<CompletableFuture<List<Operation>>> futures, RunningTransaction transaction)
+      throws OperationException {
+    try {
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+      List<Operation> inverses = new ArrayList<>();
+      for (CompletableFuture<List<Operation>> future : futures) {
+        inverses.addAll(future.get());
+      }
+      return inverses;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OperationException("Interrupted while committing " + transaction);
+    } catch (ExecutionException e) {
+      throw new OperationException(e.getCause().getMessage());
+    }
+  }
+
+  public long getDistributedCommits() {
+    return distributedCommits.sum();
+  }
+
+  public double getAveragePrepareMillis() {
+    long count = distributedCommits.sum();
+    return count == 0 ? 0 : totalPrepareNanos.sum() / 1e6 / count;
+  }
+
+  public double getAverageCommitMillis() {
+    long count = distributedCommits.sum();
+    return count == 0 ? 0 : totalCommitNanos.sum() / 1e6 / count;
+  }
+}
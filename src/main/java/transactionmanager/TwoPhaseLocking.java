@@ -0,0 +1,69 @@
+package transactionmanager;
+
+import server.Operation;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Strict two phase locking: the locks needed by each operation are taken right before it runs (see
+ * {@link LockPlanner}, upgrading when a locked table or row is needed in a stronger mode later) and all locks are
+ * released once the transaction committed or was rolled back. Deadlocks are broken by the {@link DeadlockDetector}.
+ */
+public class TwoPhaseLocking implements ConcurrencyControl {
+
+  private static final Logger logger = Logger.getLogger(TwoPhaseLocking.class.getName());
+
+  private final LockManager lockManager = new LockManager();
+  private final DeadlockDetector deadlockDetector = new DeadlockDetector(lockManager);
+  private final ConcurrentMap<RunningTransaction, Set<LockKey>> lockedKeys = new ConcurrentHashMap<>();
+  private final LongAdder aborts = new LongAdder();
+
+  public TwoPhaseLocking() {
+    deadlockDetector.start();
+  }
+
+  @Override
+  public void beforeOperation(RunningTransaction transaction, Operation operation)
+      throws InterruptedException, TransactionAbortedException {
+    Set<LockKey> keys = lockedKeys.computeIfAbsent(transaction, t -> new LinkedHashSet<>());
+    for (Map.Entry<LockKey, LockMode> lock : LockPlanner.locksFor(operation).entrySet()) {
+      try {
+        lockManager.acquire(transaction, lock.getKey(), lock.getValue());
+      } catch (DeadlockException e) {
+        aborts.increment();
+        throw e;
+      }
+      keys.add(lock.getKey());
+    }
+  }
+
+  @Override
+  public void finish(RunningTransaction transaction) {
+    Set<LockKey> keys = lockedKeys.remove(transaction);
+    if (keys != null) {
+      lockManager.releaseAll(transaction, keys);
+      logger.log(Level.FINE, "All locks released from {0}", transaction.getId());
+    }
+  }
+
+  @Override
+  public long getAborts() {
+    return aborts.sum();
+  }
+
+  @Override
+  public void shutdown() throws InterruptedException {
+    deadlockDetector.stop();
+  }
+
+  public DeadlockDetector getDeadlockDetector() {
+    return deadlockDetector;
+  }
+}
@@ -0,0 +1,365 @@
+package transactionmanager;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import data.Database;
+import server.Operation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the operations run by transactions together with their inverses, and of commit decisions.
+ * Records are appended to an in-memory buffer and written sequentially; {@link #force(long)} writes and fsyncs
+ * everything appended so far, so one fsync covers the records of every transaction that appended in the meantime.
+ * Every database commit forces the log first, so no change reaches a database before its log record is durable.
+ * Once the log grew past {@code -D}{@value #TRUNCATE_BYTES_PROPERTY} bytes (16 MB by default), it is emptied as soon
+ * as every database committed all the records appended for it, since recovery would then have nothing to redo.
+ */
+public class WriteAheadLog {
+  public static final String TRUNCATE_BYTES_PROPERTY = "transactionmanager.walTruncateBytes";
+
+  private static final int FLUSH_THRESHOLD = 1 << 20;
+
+  public enum RecordType {
+    OPERATION,
+    COMPENSATION,
+    COMMIT,
+    ABORT
+  }
+
+  private final Path path;
+  private final FileChannel channel;
+  private final ReentrantLock appendLock = new ReentrantLock();
+  private final ReentrantLock forceLock = new ReentrantLock();
+  private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+  private long lastLsn;
+  private volatile long durableLsn;
+  private final long truncateBytes;
+  // Guarded by appendLock: the size of the log including the buffer, the LSN of the last record appended for every
+  // database and the last LSN every database committed
+  private long size;
+  private final Map<Database, Long> lastDatabaseLsns = new EnumMap<>(Database.class);
+  private final Map<Database, Long> checkpoints = new EnumMap<>(Database.class);
+
+  public WriteAheadLog(Path path) throws IOException {
+    this(path, Long.getLong(TRUNCATE_BYTES_PROPERTY, 16 << 20));
+  }
+
+  WriteAheadLog(Path path, long truncateBytes) throws IOException {
+    this.path = path;
+    this.truncateBytes = truncateBytes;
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    size = channel.size();
+    channel.position(size);
+  }
+
+  public long appendOperation(String transactionId, Database database, Operation operation, Operation inverse)
+      throws IOException {
+    return append(new Record(0, RecordType.OPERATION, transactionId, database, operation, inverse));
+  }
+
+  public long appendCompensation(String transactionId, Database database, Operation operation) throws IOException {
+    return append(new Record(0, RecordType.COMPENSATION, transactionId, database, operation, null));
+  }
+
+  public long appendCommit(String transactionId) throws IOException {
+    return append(new Record(0, RecordType.COMMIT, transactionId, null, null, null));
+  }
+
+  /**
+   * Records that the database rolled back the writes of the transaction after its commit was logged, because the
+   * database commit itself failed, so recovery must not redo them there.
+   */
+  public long appendAbort(String transactionId, Database database) throws IOException {
+    return append(new Record(0, RecordType.ABORT, transactionId, database, null, null));
+  }
+
+  public long getLastLsn() {
+    appendLock.lock();
+    try {
+      return lastLsn;
+    } finally {
+      appendLock.unlock();
+    }
+  }
+
+  /**
+   * Makes every record up to the given LSN durable.
+   */
+  public void force(long lsn) throws IOException {
+    if (durableLsn >= lsn) {
+      return;
+    }
+    forceLock.lock();
+    try {
+      if (durableLsn >= lsn) {
+        return;
+      }
+      long flushedLsn;
+      appendLock.lock();
+      try {
+        flushedLsn = lastLsn;
+        write();
+      } finally {
+        appendLock.unlock();
+      }
+      channel.force(false);
+      durableLsn = flushedLsn;
+    } finally {
+      forceLock.unlock();
+    }
+  }
+
+  /**
+   * Reads all complete records; a torn record at the end of the log ends the scan.
+   */
+  public List<Record> readAll() throws IOException {
+    List<Record> records = new ArrayList<>();
+    ByteBuffer header = ByteBuffer.allocate(12);
+    long fileSize = channel.size();
+    long position = 0;
+    while (true) {
+      header.clear();
+      if (read(header, position) < header.capacity()) {
+        break;
+      }
+      header.flip();
+      int length = header.getInt();
+      long checksum = header.getLong();
+      // A torn or garbage header can hold any length, which must not be allocated before it is known to fit
+      if (length <= 0 || length > fileSize - position - header.capacity()) {
+        break;
+      }
+      ByteBuffer payload = ByteBuffer.allocate(length);
+      if (read(payload, position + header.capacity()) < length) {
+        break;
+      }
+      CRC32 crc = new CRC32();
+      crc.update(payload.array());
+      if (crc.getValue() != checksum) {
+        break;
+      }
+      payload.flip();
+      records.add(Record.decode(payload));
+      position += header.capacity() + length;
+    }
+    return records;
+  }
+
+  /**
+   * Empties the log once recovery applied it, continuing the LSN sequence after the given one.
+   */
+  public void reset(long lsn) throws IOException {
+    appendLock.lock();
+    try {
+      truncate(lsn);
+    } finally {
+      appendLock.unlock();
+    }
+  }
+
+  /**
+   * Records that the database committed every record up to the LSN, and empties the log if it is due and no database
+   * needs any of its records anymore.
+   */
+  public void checkpointed(Database database, long lsn) throws IOException {
+    appendLock.lock();
+    try {
+      checkpoints.merge(database, lsn, Math::max);
+      if (!isTruncatable()) {
+        return;
+      }
+    } finally {
+      appendLock.unlock();
+    }
+    // Same lock order as force(), which must not write or fsync the file while it is truncated
+    forceLock.lock();
+    try {
+      appendLock.lock();
+      try {
+        if (isTruncatable()) {
+          truncate(lastLsn);
+        }
+      } finally {
+        appendLock.unlock();
+      }
+    } finally {
+      forceLock.unlock();
+    }
+  }
+
+  public long getSize() {
+    appendLock.lock();
+    try {
+      return size;
+    } finally {
+      appendLock.unlock();
+    }
+  }
+
+  /**
+   * Forces what was appended so far and closes the log file.
+   */
+  public void close() throws IOException {
+    force(getLastLsn());
+    channel.close();
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  private boolean isTruncatable() {
+    if (size < truncateBytes) {
+      return false;
+    }
+    for (Map.Entry<Database, Long> last : lastDatabaseLsns.entrySet()) {
+      if (checkpoints.getOrDefault(last.getKey(), 0L) < last.getValue()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void truncate(long lsn) throws IOException {
+    buffer.clear();
+    channel.truncate(0);
+    channel.position(0);
+    channel.force(true);
+    lastLsn = lsn;
+    durableLsn = lsn;
+    size = 0;
+    lastDatabaseLsns.clear();
+  }
+
+  private long append(Record record) throws IOException {
+    appendLock.lock();
+    try {
+      record.lsn = ++lastLsn;
+      byte[] payload = record.encode();
+      CRC32 crc = new CRC32();
+      crc.update(payload);
+
+      int recordSize = 12 + payload.length;
+      if (buffer.remaining() < recordSize) {
+        write();
+        if (buffer.capacity() < recordSize) {
+          buffer = ByteBuffer.allocate(recordSize);
+        }
+      }
+      buffer.putInt(payload.length).putLong(crc.getValue()).put(payload);
+      size += recordSize;
+      if (record.database != null) {
+        lastDatabaseLsns.put(record.database, record.lsn);
+      }
+      if (buffer.position() >= FLUSH_THRESHOLD) {
+        write();
+      }
+      return record.lsn;
+    } finally {
+      appendLock.unlock();
+    }
+  }
+
+  private void write() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private int read(ByteBuffer target, long position) throws IOException {
+    int total = 0;
+    while (target.hasRemaining()) {
+      int read = channel.read(target, position + total);
+      if (read < 0) {
+        break;
+      }
+      total += read;
+    }
+    return total;
+  }
+
+  public static class Record {
+    private long lsn;
+    private final RecordType type;
+    private final String transactionId;
+    private final Database database;
+    private final Operation operation;
+    private final Operation inverse;
+
+    private Record(long lsn, RecordType type, String transactionId, Database database, Operation operation,
+                   Operation inverse) {
+      this.lsn = lsn;
+      this.type = type;
+      this.transactionId = transactionId;
+      this.database = database;
+      this.operation = operation;
+      this.inverse = inverse;
+    }
+
+    public long getLsn() {
+      return lsn;
+    }
+
+    public RecordType getType() {
+      return type;
+    }
+
+    public String getTransactionId() {
+      return transactionId;
+    }
+
+    public Database getDatabase() {
+      return database;
+    }
+
+    public Operation getOperation() {
+      return operation;
+    }
+
+    public Operation getInverse() {
+      return inverse;
+    }
+
+    private byte[] encode() {
+      byte[] id = transactionId.getBytes(StandardCharsets.UTF_8);
+      byte[] operationBytes = operation == null ? new byte[0] : operation.toByteArray();
+      byte[] inverseBytes = inverse == null ? new byte[0] : inverse.toByteArray();
+      ByteBuffer payload = ByteBuffer.allocate(8 + 1 + 4 + id.length + 1 + 4 + operationBytes.length + 4 + inverseBytes.length);
+      payload.putLong(lsn).put((byte) type.ordinal());
+      payload.putInt(id.length).put(id);
+      payload.put((byte) (database == null ? -1 : database.ordinal()));
+      payload.putInt(operationBytes.length).put(operationBytes);
+      payload.putInt(inverseBytes.length).put(inverseBytes);
+      return payload.array();
+    }
+
+    private static Record decode(ByteBuffer payload) throws InvalidProtocolBufferException {
+      long lsn = payload.getLong();
+      RecordType type = RecordType.values()[payload.get()];
+      byte[] id = new byte[payload.getInt()];
+      payload.get(id);
+      byte database = payload.get();
+      byte[] operation = new byte[payload.getInt()];
+      payload.get(operation);
+      byte[] inverse = new byte[payload.getInt()];
+      payload.get(inverse);
+      return new Record(lsn, type, new String(id, StandardCharsets.UTF_8),
+          database < 0 ? null : Database.values()[database],
+          operation.length == 0 ? null : Operation.parseFrom(operation),
+          inverse.length == 0 ? null : Operation.parseFrom(inverse));
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package client;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import server.Transaction;
+import server.TransactionHandlerGrpc;
+import server.TransactionReply;
+import server.TransactionRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TravelAgencyClientTest {
+
+  private Server server;
+  private ManagedChannel channel;
+
+  @Before
+  public void setUp() throws Exception {
+    String name = getClass().getName();
+    server = InProcessServerBuilder.forName(name).directExecutor().addService(new FakeTransactionHandler()).build()
+        .start();
+    channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+  }
+
+  @After
+  public void tearDown() {
+    channel.shutdownNow();
+    server.shutdownNow();
+  }
+
+  @Test
+  public void asyncModeCountsRejectedAndFailedTransactions() throws Exception {
+    List<Transaction> transactions = new ArrayList<>();
+    for (String id : new String[] {"ok1", "rejected1", "ok2", "error1", "rejected2", "ok3"}) {
+      transactions.add(Transaction.newBuilder().setId(id).build());
+    }
+
+    TravelAgencyClient client = new TravelAgencyClient(channel, transactions.iterator());
+
+    assertEquals(3, client.sendTransactionsAsync(2));
+  }
+
+  /**
+   * Commits the transactions whose id starts with "ok", rejects those starting with "rejected" and fails the RPC of
+   * the others.
+   */
+  private static class FakeTransactionHandler extends TransactionHandlerGrpc.TransactionHandlerImplBase {
+    @Override
+    public void sendTransaction(TransactionRequest request, StreamObserver<TransactionReply> responseObserver) {
+      String id = request.getTransaction(0).getId();
+      if (id.startsWith("ok") || id.startsWith("rejected")) {
+        responseObserver.onNext(TransactionReply.newBuilder().setTransactionId(id).setSuccess(id.startsWith("ok"))
+            .build());
+        responseObserver.onCompleted();
+      } else {
+        responseObserver.onError(Status.INTERNAL.asException());
+      }
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package data;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ConnectionPoolTest {
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  @After
+  public void tearDown() {
+    System.clearProperty(ConnectionPool.SIZE_PROPERTY);
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void isSizedFromItsOwnProperty() {
+    System.setProperty(ConnectionPool.SIZE_PROPERTY, "3");
+
+    assertEquals(3, ConnectionPool.fromSystemProperties("jdbc:sqlite::memory:").getMaxSize());
+  }
+
+  @Test
+  public void borrowBlocksOnceEveryConnectionIsBorrowed() throws Exception {
+    ConnectionPool pool = new ConnectionPool("jdbc:sqlite::memory:", 1);
+    PooledConnection connection = pool.borrow();
+
+    Future<PooledConnection> waiting = executor.submit(pool::borrow);
+    try {
+      waiting.get(100, TimeUnit.MILLISECONDS);
+      fail("Borrowed more connections than the pool holds");
+    } catch (TimeoutException e) {
+      // Still waiting
+    }
+
+    pool.release(connection);
+    assertSame(connection, waiting.get(5, TimeUnit.SECONDS));
+    pool.close();
+  }
+}
@@ -0,0 +1,86 @@
+package data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class PooledConnectionTest {
+
+  private static final String INSERT = "INSERT INTO t (id) VALUES (?)";
+
+  private PooledConnection connection;
+
+  @Before
+  public void setUp() throws SQLException {
+    connection = new PooledConnection(DriverManager.getConnection("jdbc:sqlite::memory:"), 2);
+    try (Statement statement = connection.getConnection().createStatement()) {
+      statement.executeUpdate("CREATE TABLE t (id INT PRIMARY KEY)");
+    }
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    connection.close();
+  }
+
+  @Test
+  public void reusesStatements() throws SQLException {
+    PreparedStatement statement = connection.prepareStatement(INSERT);
+    statement.setInt(1, 1);
+    statement.executeUpdate();
+
+    assertSame(statement, connection.prepareStatement(INSERT));
+    assertEquals(1, connection.getStatementCacheHits());
+    assertEquals(1, connection.getStatementCacheMisses());
+  }
+
+  @Test
+  public void replacesStatementWhoseExecutionFailed() throws SQLException {
+    insert(1);
+    PreparedStatement failed = connection.prepareStatement(INSERT);
+    try {
+      insert(1);
+      fail("Duplicate key inserted");
+    } catch (SQLException e) {
+      // expected, the statement is dead from now on
+    }
+
+    PreparedStatement statement = connection.prepareStatement(INSERT);
+    assertNotSame(failed, statement);
+    insert(2);
+    assertEquals(2, count());
+  }
+
+  @Test
+  public void closesLeastRecentlyUsedStatement() throws SQLException {
+    PreparedStatement insert = connection.prepareStatement(INSERT);
+    connection.prepareStatement("SELECT COUNT(*) FROM t");
+    connection.prepareStatement("SELECT * FROM t");
+
+    assertEquals(true, insert.isClosed());
+    assertNotSame(insert, connection.prepareStatement(INSERT));
+  }
+
+  private void insert(int id) throws SQLException {
+    PreparedStatement statement = connection.prepareStatement(INSERT);
+    statement.setInt(1, id);
+    statement.executeUpdate();
+  }
+
+  private int count() throws SQLException {
+    try (ResultSet rs = connection.prepareStatement("SELECT COUNT(*) FROM t").executeQuery()) {
+      return rs.next() ? rs.getInt(1) : 0;
+    }
+  }
+}
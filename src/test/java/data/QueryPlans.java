@@ -0,0 +1,32 @@
+package data;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class QueryPlans {
+
+  /**
+   * Returns the detail column of {@code EXPLAIN QUERY PLAN}, one entry per step. Parameters are bound to null, which
+   * does not change the plan.
+   */
+  public static List<String> explain(Database database, String query) throws SQLException {
+    List<String> plan = new ArrayList<>();
+    try (Connection connection = DriverManager.getConnection(database.getUrl());
+         PreparedStatement statement = connection.prepareStatement("EXPLAIN QUERY PLAN " + query)) {
+      for (int i = 1; i <= statement.getParameterMetaData().getParameterCount(); i++) {
+        statement.setObject(i, null);
+      }
+      try (ResultSet rs = statement.executeQuery()) {
+        while (rs.next()) {
+          plan.add(rs.getString("detail"));
+        }
+      }
+    }
+    return plan;
+  }
+}
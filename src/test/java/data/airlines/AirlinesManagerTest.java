@@ -0,0 +1,46 @@
+package data.airlines;
+
+import data.Database;
+import data.QueryPlans;
+import data.TemporaryDatabases;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+public class AirlinesManagerTest {
+
+  private TemporaryDatabases databases;
+
+  @Before
+  public void setUp() throws Exception {
+    databases = TemporaryDatabases.empty();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    databases.delete();
+  }
+
+  @Test
+  public void searchByDestinationUsesIndexes() throws Exception {
+    List<String> plan = QueryPlans.explain(Database.AIRLINES, AirlinesManager.FLIGHTS_TO_DESTINATION_QUERY);
+    assertTrue(plan.toString(), plan.stream().anyMatch(step -> step.contains("routes_destination_idx")));
+    assertTrue(plan.toString(), plan.stream().anyMatch(step -> step.contains("flights_route_id_times_idx")));
+  }
+
+  @Test
+  public void routeFlightsUseIndex() throws Exception {
+    List<String> plan = QueryPlans.explain(Database.AIRLINES, AirlinesManager.ROUTE_FLIGHTS_QUERY);
+    assertTrue(plan.toString(), plan.stream().anyMatch(step -> step.contains("flights_route_id_times_idx")));
+  }
+
+  @Test
+  public void flightRemovalUsesIndex() throws Exception {
+    List<String> plan = QueryPlans.explain(Database.AIRLINES, AirlinesManager.REMOVE_FLIGHT_QUERY);
+    assertTrue(plan.toString(), plan.stream().anyMatch(step -> step.contains("flights_route_id_times_idx")));
+  }
+}
@@ -0,0 +1,33 @@
+package data.hotels;
+
+import data.Database;
+import data.QueryPlans;
+import data.TemporaryDatabases;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+public class HotelsManagerTest {
+
+  private TemporaryDatabases databases;
+
+  @Before
+  public void setUp() throws Exception {
+    databases = TemporaryDatabases.empty();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    databases.delete();
+  }
+
+  @Test
+  public void searchByCityUsesIndex() throws Exception {
+    List<String> plan = QueryPlans.explain(Database.HOTELS, HotelsManager.HOTELS_IN_CITY_QUERY);
+    assertTrue(plan.toString(), plan.stream().anyMatch(step -> step.contains("hotels_city_idx")));
+  }
+}
@@ -0,0 +1,39 @@
+package data.users;
+
+import data.Database;
+import data.QueryPlans;
+import data.TemporaryDatabases;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+public class UsersManagerTest {
+
+  private TemporaryDatabases databases;
+
+  @Before
+  public void setUp() throws Exception {
+    databases = TemporaryDatabases.empty();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    databases.delete();
+  }
+
+  @Test
+  public void reservationLookupUsesIndex() throws Exception {
+    List<String> plan = QueryPlans.explain(Database.USERS, UsersManager.HOTEL_RESERVATION_QUERY);
+    assertTrue(plan.toString(), plan.stream().allMatch(step -> step.startsWith("SEARCH") && step.contains("INDEX")));
+  }
+
+  @Test
+  public void reservationRemovalUsesIndex() throws Exception {
+    List<String> plan = QueryPlans.explain(Database.USERS, UsersManager.REMOVE_HOTEL_RESERVATION_QUERY);
+    assertTrue(plan.toString(), plan.stream().allMatch(step -> step.startsWith("SEARCH") && step.contains("INDEX")));
+  }
+}
@@ -0,0 +1,72 @@
+package server;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class OperationsTest {
+
+  @Test
+  public void convertsLegacyOperations() {
+    Operation legacy = Operation.newBuilder().setInstruction("W").setVariable(Variable.newBuilder().setId("users"))
+        .setParameters(OperationParameters.newBuilder().addParameters("7").addParameters("Ann").addParameters("30"))
+        .build();
+
+    Operation typed = Operations.typed(legacy);
+
+    assertEquals(OperationType.WRITE, typed.getType());
+    assertEquals(Table.USERS, typed.getTable());
+    assertEquals(UserRow.newBuilder().setId(7).setName("Ann").setAge(30).build(), typed.getUser());
+  }
+
+  @Test
+  public void acceptsTypedOperationsWithTheRowOfTheirTable() {
+    Operations.typed(Operation.newBuilder().setType(OperationType.DELETE).setTable(Table.ROUTES)
+        .setRoute(RouteRow.newBuilder().setId(1)).build());
+    Operations.typed(Operation.newBuilder().setType(OperationType.READ).setTable(Table.FLIGHTS)
+        .setSearch(Search.newBuilder().setDestination("Paris")).build());
+    Operations.typed(Operation.newBuilder().setType(OperationType.READ).setTable(Table.USERS).build());
+  }
+
+  @Test
+  public void rejectsRowsOfAnotherTable() {
+    // Would be locked as user 3 but run as a flight write
+    assertRejected(Operation.newBuilder().setType(OperationType.WRITE).setTable(Table.FLIGHTS)
+        .setUser(UserRow.newBuilder().setId(3)).build());
+  }
+
+  @Test
+  public void rejectsWritesWithoutARow() {
+    assertRejected(Operation.newBuilder().setType(OperationType.WRITE).setTable(Table.USERS).build());
+  }
+
+  @Test
+  public void rejectsReadsWithARow() {
+    assertRejected(Operation.newBuilder().setType(OperationType.READ).setTable(Table.USERS)
+        .setUser(UserRow.newBuilder().setId(3)).build());
+  }
+
+  @Test
+  public void checksTypedOperationsOfMixedTransactions() {
+    Transaction transaction = Transaction.newBuilder().setId("t")
+        .addOperations(Operation.newBuilder().setInstruction("R").setVariable(Variable.newBuilder().setId("users")))
+        .addOperations(Operation.newBuilder().setType(OperationType.DELETE).setTable(Table.USERS))
+        .build();
+    try {
+      Operations.typed(transaction);
+      fail("Delete without a row accepted");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+  }
+
+  private static void assertRejected(Operation operation) {
+    try {
+      Operations.typed(operation);
+      fail("Accepted " + operation);
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+  }
+}
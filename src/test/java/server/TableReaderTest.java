@@ -0,0 +1,126 @@
+package server;
+
+import data.Database;
+import data.PooledConnection;
+import data.TemporaryDatabases;
+import data.users.User;
+import data.users.UsersManager;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import transactionmanager.TransactionManager;
+
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TableReaderTest {
+
+  private static final int USERS = 25;
+
+  private TemporaryDatabases databases;
+  private TransactionManager transactionManager;
+  private Server server;
+  private ManagedChannel channel;
+  private TransactionHandlerGrpc.TransactionHandlerBlockingStub stub;
+
+  @Before
+  public void setUp() throws Exception {
+    databases = TemporaryDatabases.empty();
+    PooledConnection connection = new PooledConnection(DriverManager.getConnection(Database.USERS.getUrl()),
+        PooledConnection.STATEMENT_CACHE_SIZE);
+    try {
+      UsersManager usersManager = new UsersManager(connection);
+      for (int id = 1; id <= USERS; id++) {
+        usersManager.addUser(new User(id, "user" + id, 30));
+      }
+    } finally {
+      connection.close();
+    }
+    transactionManager = new TransactionManager();
+
+    String name = getClass().getName();
+    server = InProcessServerBuilder.forName(name).addService(new TransactionHandlerGrpc.TransactionHandlerImplBase() {
+      @Override
+      public void readTable(ReadRequest request, StreamObserver<ReadReply> responseObserver) {
+        TableReader.read(transactionManager, request, responseObserver);
+      }
+    }).build().start();
+    channel = InProcessChannelBuilder.forName(name).build();
+    stub = TransactionHandlerGrpc.newBlockingStub(channel);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    channel.shutdownNow();
+    server.shutdownNow();
+    transactionManager.shutdown();
+    databases.delete();
+  }
+
+  @Test
+  public void readsEveryRowOnceInPagesOfTheRequestedSize() {
+    List<ReadReply> pages = read(ReadRequest.newBuilder().setTable(Table.USERS).setPageSize(10).build());
+
+    assertEquals(3, pages.size());
+    assertEquals(10, pages.get(0).getResult().getUsersCount());
+    assertEquals(10, pages.get(1).getResult().getUsersCount());
+    assertEquals(5, pages.get(2).getResult().getUsersCount());
+    assertEquals(10, pages.get(0).getLastKey());
+    assertEquals(USERS, pages.get(2).getLastKey());
+
+    int expectedId = 1;
+    for (ReadReply page : pages) {
+      for (UserRecord user : page.getResult().getUsersList()) {
+        assertEquals(expectedId++, user.getId());
+      }
+    }
+  }
+
+  @Test
+  public void fullLastPageIsNotFollowedByAnEmptyOne() {
+    List<ReadReply> pages = read(ReadRequest.newBuilder().setTable(Table.USERS).setPageSize(5).build());
+
+    assertEquals(5, pages.size());
+    assertEquals(USERS, pages.get(4).getLastKey());
+  }
+
+  @Test
+  public void resumesAfterTheGivenKey() {
+    List<ReadReply> pages = read(ReadRequest.newBuilder().setTable(Table.USERS).setPageSize(10).setAfter(20).build());
+
+    assertEquals(1, pages.size());
+    assertEquals(5, pages.get(0).getResult().getUsersCount());
+    assertEquals(21, pages.get(0).getResult().getUsers(0).getId());
+  }
+
+  @Test
+  public void rejectsNegativePageSizes() {
+    try {
+      read(ReadRequest.newBuilder().setTable(Table.USERS).setPageSize(-1).build());
+      fail("Negative page size accepted");
+    } catch (StatusRuntimeException e) {
+      assertEquals(Status.Code.INVALID_ARGUMENT, e.getStatus().getCode());
+    }
+  }
+
+  private List<ReadReply> read(ReadRequest request) {
+    List<ReadReply> pages = new ArrayList<>();
+    Iterator<ReadReply> replies = stub.readTable(request);
+    while (replies.hasNext()) {
+      pages.add(replies.next());
+    }
+    return pages;
+  }
+}
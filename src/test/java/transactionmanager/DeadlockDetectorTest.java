@@ -0,0 +1,64 @@
+package transactionmanager;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DeadlockDetectorTest {
+
+  private final LockManager lockManager = new LockManager();
+  private final DeadlockDetector detector = new DeadlockDetector(lockManager);
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * The transaction that executed fewer operations is the victim, and the other one gets its lock once the victim
+   * released the locks it held.
+   */
+  @Test
+  public void abortsTheTransactionWithLessWorkDone() throws Exception {
+    LockKey first = LockKey.row("users", "1");
+    LockKey second = LockKey.row("users", "2");
+    RunningTransaction victim = LockManagerTest.transaction("victim");
+    RunningTransaction survivor = LockManagerTest.transaction("survivor");
+    survivor.operationExecuted();
+    lockManager.acquire(victim, first, LockMode.EXCLUSIVE);
+    lockManager.acquire(survivor, second, LockMode.EXCLUSIVE);
+
+    Future<?> victimWait = executor.submit(() -> {
+      lockManager.acquire(victim, second, LockMode.EXCLUSIVE);
+      return null;
+    });
+    Future<?> survivorWait = executor.submit(() -> {
+      lockManager.acquire(survivor, first, LockMode.EXCLUSIVE);
+      return null;
+    });
+    while (lockManager.waitsForGraph().size() < 2) {
+      Thread.sleep(10);
+    }
+    detector.detectDeadlocks();
+
+    try {
+      victimWait.get(5, TimeUnit.SECONDS);
+      fail("Deadlock victim was granted the lock");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof DeadlockException);
+    }
+    lockManager.release(victim, first);
+    survivorWait.get(5, TimeUnit.SECONDS);
+    assertEquals(1, detector.getVictims());
+  }
+}
@@ -0,0 +1,81 @@
+package transactionmanager;
+
+import data.Database;
+import data.OperationException;
+import data.PooledConnection;
+import data.TemporaryDatabases;
+import data.users.User;
+import data.users.UsersManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import server.Operation;
+import server.OperationType;
+import server.UserRow;
+
+import java.sql.DriverManager;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GroupCommitterTest {
+
+  private TemporaryDatabases databases;
+  private WriteAheadLog log;
+  private GroupCommitter committer;
+
+  @Before
+  public void setUp() throws Exception {
+    databases = TemporaryDatabases.empty();
+    log = new WriteAheadLog(databases.getDirectory().resolve("wal.log"));
+    committer = new GroupCommitter(Database.USERS, new PooledConnection(
+        DriverManager.getConnection(Database.USERS.getUrl()), PooledConnection.STATEMENT_CACHE_SIZE), log,
+        GroupCommitterTest::addUser);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    committer.stop();
+    log.close();
+    databases.delete();
+  }
+
+  @Test
+  public void failedRequestIsRolledBackAlone() throws Exception {
+    // Queued before the committer starts, so that both end up in the same batch
+    CompletableFuture<List<Operation>> committed = committer.commit("a", Arrays.asList(user(1), user(2)), true);
+    CompletableFuture<List<Operation>> failed = committer.commit("b", Arrays.asList(user(3), user(1)), true);
+    committer.start();
+
+    assertEquals(2, committed.get().size());
+    try {
+      failed.get();
+      fail("Duplicate user committed");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof OperationException);
+    }
+    assertEquals(1, committer.getCommits());
+    assertEquals(2, TransactionManagerTest.count(Database.USERS, "users"));
+
+    List<WriteAheadLog.Record> records = log.readAll();
+    assertEquals(Arrays.asList("a", "a", "a"),
+        records.stream().map(WriteAheadLog.Record::getTransactionId).collect(Collectors.toList()));
+    assertEquals(WriteAheadLog.RecordType.COMMIT, records.get(2).getType());
+  }
+
+  private static Operation user(int id) {
+    return TransactionManagerTest.addUser("t", id).getOperations(0);
+  }
+
+  private static Operation addUser(PooledConnection connection, Operation operation) throws OperationException {
+    UserRow row = operation.getUser();
+    new UsersManager(connection).addUser(new User(row.getId(), row.getName(), row.getAge()));
+    return operation.toBuilder().setType(OperationType.DELETE).build();
+  }
+}
@@ -0,0 +1,116 @@
+package transactionmanager;
+
+import org.junit.After;
+import org.junit.Test;
+import server.Transaction;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LockManagerTest {
+
+  private static final LockKey KEY = LockKey.row("users", "1");
+
+  private final LockManager lockManager = new LockManager();
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void sharedLocksAreGrantedTogether() throws Exception {
+    RunningTransaction first = transaction("first");
+    RunningTransaction second = transaction("second");
+
+    lockManager.acquire(first, KEY, LockMode.SHARED);
+    lockManager.acquire(second, KEY, LockMode.SHARED);
+
+    assertTrue(lockManager.waitsForGraph().isEmpty());
+  }
+
+  @Test
+  public void exclusiveLockWaitsForTheSharedHolders() throws Exception {
+    RunningTransaction reader = transaction("reader");
+    RunningTransaction writer = transaction("writer");
+    lockManager.acquire(reader, KEY, LockMode.SHARED);
+
+    Future<?> write = acquireAsync(writer, LockMode.EXCLUSIVE);
+    assertBlocked(write);
+    assertEquals(Collections.singletonMap(writer, Collections.singleton(reader)), lockManager.waitsForGraph());
+
+    lockManager.release(reader, KEY);
+    write.get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void upgradeIsGrantedBeforeEarlierPlainRequests() throws Exception {
+    RunningTransaction upgrader = transaction("upgrader");
+    RunningTransaction reader = transaction("reader");
+    RunningTransaction writer = transaction("writer");
+    lockManager.acquire(upgrader, KEY, LockMode.SHARED);
+    lockManager.acquire(reader, KEY, LockMode.SHARED);
+
+    Future<?> write = acquireAsync(writer, LockMode.EXCLUSIVE);
+    assertBlocked(write);
+    Future<?> upgrade = acquireAsync(upgrader, LockMode.EXCLUSIVE);
+    assertBlocked(upgrade);
+
+    lockManager.release(reader, KEY);
+    upgrade.get(5, TimeUnit.SECONDS);
+    assertBlocked(write);
+
+    lockManager.release(upgrader, KEY);
+    write.get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void abortedWaiterGetsADeadlockException() throws Exception {
+    RunningTransaction holder = transaction("holder");
+    RunningTransaction waiter = transaction("waiter");
+    lockManager.acquire(holder, KEY, LockMode.EXCLUSIVE);
+
+    Future<?> wait = acquireAsync(waiter, LockMode.SHARED);
+    assertBlocked(wait);
+    assertTrue(lockManager.abort(waiter));
+
+    try {
+      wait.get(5, TimeUnit.SECONDS);
+      fail("Aborted waiter was granted the lock");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof DeadlockException);
+    }
+    assertFalse(lockManager.abort(holder));
+  }
+
+  private Future<?> acquireAsync(RunningTransaction transaction, LockMode mode) {
+    return executor.submit(() -> {
+      lockManager.acquire(transaction, KEY, mode);
+      return null;
+    });
+  }
+
+  private void assertBlocked(Future<?> acquire) throws Exception {
+    try {
+      acquire.get(100, TimeUnit.MILLISECONDS);
+      fail("Conflicting lock was granted");
+    } catch (TimeoutException e) {
+      // Still waiting
+    }
+  }
+
+  static RunningTransaction transaction(String id) {
+    return new RunningTransaction(Transaction.newBuilder().setId(id).build());
+  }
+}
@@ -0,0 +1,75 @@
+package transactionmanager;
+
+import org.junit.Test;
+import server.FlightRow;
+import server.HotelReservationRow;
+import server.Operation;
+import server.RouteRow;
+import server.OperationType;
+import server.Table;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class LockPlannerTest {
+
+  @Test
+  public void reservationsOfTheSameHotelLockTheSameRow() {
+    Map<LockKey, LockMode> first = LockPlanner.locksFor(reservation(1, 5));
+    Map<LockKey, LockMode> second = LockPlanner.locksFor(reservation(2, 5));
+
+    assertEquals(LockMode.EXCLUSIVE, first.get(LockKey.row("hotel_reservations", "5")));
+    assertEquals(first, second);
+  }
+
+  @Test
+  public void reservationsOfDifferentHotelsOnlyShareTheIntentionLock() {
+    Map<LockKey, LockMode> first = LockPlanner.locksFor(reservation(1, 5));
+    Map<LockKey, LockMode> second = LockPlanner.locksFor(reservation(1, 6));
+
+    LockKey table = LockKey.table("hotel_reservations");
+    assertEquals(LockMode.INTENTION_EXCLUSIVE, first.get(table));
+    assertEquals(LockMode.INTENTION_EXCLUSIVE, second.get(table));
+    assertFalse(second.containsKey(LockKey.row("hotel_reservations", "5")));
+  }
+
+  @Test
+  public void readsLockTheWholeTable() {
+    Operation read = Operation.newBuilder().setType(OperationType.READ).setTable(Table.FLIGHTS).build();
+
+    Map<LockKey, LockMode> locks = LockPlanner.locksFor(read);
+
+    assertEquals(1, locks.size());
+    assertEquals(LockMode.SHARED, locks.get(LockKey.table("flights")));
+  }
+
+  @Test
+  public void writesConflictWithReadsOfTheirTable() {
+    Operation write = Operation.newBuilder().setType(OperationType.WRITE).setTable(Table.FLIGHTS)
+        .setFlight(FlightRow.newBuilder().setRouteId(3)).build();
+
+    LockMode tableMode = LockPlanner.locksFor(write).get(LockKey.table("flights"));
+
+    assertFalse(tableMode.isCompatibleWith(LockMode.SHARED));
+    assertEquals(LockMode.SHARED_INTENTION_EXCLUSIVE, tableMode.combine(LockMode.SHARED));
+  }
+
+  @Test
+  public void routeWritesLockTheFlightsOfTheRoute() {
+    Operation route = Operation.newBuilder().setType(OperationType.DELETE).setTable(Table.ROUTES)
+        .setRoute(RouteRow.newBuilder().setId(3)).build();
+    Operation flight = Operation.newBuilder().setType(OperationType.WRITE).setTable(Table.FLIGHTS)
+        .setFlight(FlightRow.newBuilder().setRouteId(3)).build();
+
+    LockKey row = LockKey.row("flights", "3");
+    assertEquals(LockMode.EXCLUSIVE, LockPlanner.locksFor(route).get(row));
+    assertEquals(LockMode.EXCLUSIVE, LockPlanner.locksFor(flight).get(row));
+  }
+
+  private static Operation reservation(int userId, int hotelId) {
+    return Operation.newBuilder().setType(OperationType.WRITE).setTable(Table.HOTEL_RESERVATIONS)
+        .setHotelReservation(HotelReservationRow.newBuilder().setUserId(userId).setHotelId(hotelId)).build();
+  }
+}
@@ -0,0 +1,122 @@
+package transactionmanager;
+
+import data.Database;
+import data.OperationException;
+import data.PooledConnection;
+import data.TemporaryDatabases;
+import data.users.User;
+import data.users.UsersManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import server.Operation;
+import server.OperationType;
+import server.UserRow;
+
+import java.sql.DriverManager;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RecoveryManagerTest {
+
+  private TemporaryDatabases databases;
+  private WriteAheadLog log;
+  private GroupCommitter committer;
+  private UsersManager users;
+
+  @Before
+  public void setUp() throws Exception {
+    databases = TemporaryDatabases.empty();
+    log = new WriteAheadLog(databases.getDirectory().resolve("wal.log"));
+    committer = new GroupCommitter(Database.USERS, new PooledConnection(
+        DriverManager.getConnection(Database.USERS.getUrl()), PooledConnection.STATEMENT_CACHE_SIZE), log,
+        (connection, operation) -> null);
+    users = new UsersManager(committer.getConnection());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    committer.stop();
+    log.close();
+    databases.delete();
+  }
+
+  @Test
+  public void redoesCommittedWritesMissingFromTheDatabase() throws Exception {
+    log.appendOperation("committed", Database.USERS, addUser(1), deleteUser(1));
+    log.appendCommit("committed");
+    log.appendOperation("undecided", Database.USERS, addUser(2), deleteUser(2));
+
+    recover();
+
+    assertNotNull(users.getUser(1));
+    assertNull(users.getUser(2));
+  }
+
+  @Test
+  public void redoesNothingTheDatabaseAbortedAfterTheCommitRecord() throws Exception {
+    log.appendOperation("aborted", Database.USERS, addUser(1), deleteUser(1));
+    log.appendCommit("aborted");
+    log.appendAbort("aborted", Database.USERS);
+
+    recover();
+
+    assertNull(users.getUser(1));
+  }
+
+  @Test
+  public void undoesNothingOfCompensatedTransactions() throws Exception {
+    // An aborted prepare of user 3, then a committed insert of the same user
+    log.appendOperation("aborted", Database.USERS, addUser(3), deleteUser(3));
+    log.appendCompensation("aborted", Database.USERS, addUser(3));
+    log.appendOperation("committed", Database.USERS, addUser(3), deleteUser(3));
+    long lsn = log.appendCommit("committed");
+    apply(addUser(3));
+    committer.writeCheckpoint(lsn);
+    committer.getConnection().getConnection().commit();
+
+    recover();
+
+    assertNotNull(users.getUser(3));
+  }
+
+  @Test
+  public void emptiesTheLogAndKeepsTheLsnSequence() throws Exception {
+    log.appendOperation("committed", Database.USERS, addUser(1), deleteUser(1));
+    long lsn = log.appendCommit("committed");
+
+    recover();
+
+    assertTrue(log.readAll().isEmpty());
+    assertEquals(lsn, committer.readCheckpoint());
+    assertEquals(lsn + 1, log.appendCommit("next"));
+  }
+
+  private void recover() throws Exception {
+    log.force(log.getLastLsn());
+    Map<Database, GroupCommitter> committers = Collections.singletonMap(Database.USERS, committer);
+    new RecoveryManager(log, committers).recover((database, operation) -> apply(operation));
+  }
+
+  private void apply(Operation operation) throws OperationException {
+    UserRow row = operation.getUser();
+    if (operation.getType() == OperationType.WRITE) {
+      users.addUser(new User(row.getId(), row.getName(), row.getAge()));
+    } else {
+      users.removeUser(row.getId());
+    }
+  }
+
+  private static Operation addUser(int id) {
+    return TransactionManagerTest.addUser("t", id).getOperations(0);
+  }
+
+  private static Operation deleteUser(int id) {
+    return addUser(id).toBuilder().setType(OperationType.DELETE).build();
+  }
+}
@@ -0,0 +1,56 @@
+package transactionmanager;
+
+import io.grpc.stub.StreamObserver;
+import server.TransactionReply;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the replies of many transactions, keyed by transaction id.
+ */
+class ReplyRecorder {
+  private final Map<String, TransactionReply> replies = new ConcurrentHashMap<>();
+  private final CountDownLatch remaining;
+
+  ReplyRecorder(int expected) {
+    remaining = new CountDownLatch(expected);
+  }
+
+  StreamObserver<TransactionReply> observer(String transactionId) {
+    return new StreamObserver<TransactionReply>() {
+      @Override
+      public void onNext(TransactionReply reply) {
+        replies.put(transactionId, reply);
+        remaining.countDown();
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        remaining.countDown();
+      }
+
+      @Override
+      public void onCompleted() {
+      }
+    };
+  }
+
+  boolean await(long seconds) throws InterruptedException {
+    return remaining.await(seconds, TimeUnit.SECONDS);
+  }
+
+  TransactionReply reply(String transactionId) {
+    return replies.get(transactionId);
+  }
+
+  /**
+   * Returns whether the transaction replied with success, false if it failed or did not reply.
+   */
+  boolean succeeded(String transactionId) {
+    TransactionReply reply = replies.get(transactionId);
+    return reply != null && reply.getSuccess();
+  }
+}
@@ -0,0 +1,68 @@
+package transactionmanager;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class SearchCacheTest {
+
+  private final SearchCache<String> cache = new SearchCache<>(2, 1, TimeUnit.HOURS);
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @Test
+  public void invalidationDropsOnlyTheGivenDestinations() throws Exception {
+    assertEquals("Paris1", cache.get("Paris", () -> load("Paris")));
+    assertEquals("Rome2", cache.get("Rome", () -> load("Rome")));
+
+    cache.invalidate(Collections.singleton("Paris"));
+
+    assertEquals("Paris3", cache.get("Paris", () -> load("Paris")));
+    assertEquals("Rome2", cache.get("Rome", () -> load("Rome")));
+    assertEquals(1, cache.getHits());
+    assertEquals(3, cache.getMisses());
+  }
+
+  @Test
+  public void resultLoadedDuringAnInvalidationIsNotCached() throws Exception {
+    String loaded = cache.get("Paris", () -> {
+      cache.invalidate(Collections.singleton("Rome"));
+      return load("Paris");
+    });
+
+    assertEquals("Paris1", loaded);
+    assertEquals(0, cache.getSize());
+    assertEquals("Paris2", cache.get("Paris", () -> load("Paris")));
+    assertEquals("Paris2", cache.get("Paris", () -> load("Paris")));
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyUsedDestination() throws Exception {
+    cache.get("Paris", () -> load("Paris"));
+    cache.get("Rome", () -> load("Rome"));
+    cache.get("Paris", () -> load("Paris"));
+    cache.get("Oslo", () -> load("Oslo"));
+
+    assertEquals(2, cache.getSize());
+    assertEquals(1, cache.getEvictions());
+    assertEquals("Paris1", cache.get("Paris", () -> load("Paris")));
+    assertEquals("Rome4", cache.get("Rome", () -> load("Rome")));
+  }
+
+  @Test
+  public void expiredResultsAreLoadedAgain() throws Exception {
+    SearchCache<String> expiring = new SearchCache<>(2, 0, TimeUnit.MILLISECONDS);
+
+    expiring.get("Paris", () -> load("Paris"));
+
+    assertEquals("Paris2", expiring.get("Paris", () -> load("Paris")));
+    assertEquals(1, expiring.getExpirations());
+  }
+
+  private String load(String destination) {
+    return destination + loads.incrementAndGet();
+  }
+}
@@ -0,0 +1,150 @@
+package transactionmanager;
+
+import data.Database;
+import data.TemporaryDatabases;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import server.FlightRow;
+import server.Operation;
+import server.OperationType;
+import server.RouteRow;
+import server.Search;
+import server.Table;
+import server.Transaction;
+import server.TransactionReply;
+import server.UserRow;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TransactionManagerTest {
+
+  private TemporaryDatabases databases;
+  private TransactionManager transactionManager;
+
+  @Before
+  public void setUp() throws Exception {
+    databases = TemporaryDatabases.empty();
+    transactionManager = new TransactionManager();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    transactionManager.shutdown();
+    databases.delete();
+  }
+
+  /**
+   * Failing inserts leave their statement unusable on the shared writer connection, which must not fail the inserts of
+   * other transactions running at the same time.
+   */
+  @Test
+  public void failedWritesDoNotFailConcurrentTransactions() throws Exception {
+    run(addUser("existing", 1));
+
+    int transactions = 200;
+    ReplyRecorder replies = new ReplyRecorder(transactions);
+    for (int i = 0; i < transactions; i++) {
+      // Every fourth transaction inserts a user that exists already
+      Transaction transaction = addUser("t" + i, i % 4 == 0 ? 1 : 1000 + i);
+      transactionManager.addTransaction(transaction, replies.observer(transaction.getId()));
+    }
+    assertTrue("Transactions did not finish", replies.await(60));
+
+    for (int i = 0; i < transactions; i++) {
+      if (i % 4 == 0) {
+        assertFalse("t" + i, replies.succeeded("t" + i));
+      } else {
+        assertTrue("t" + i, replies.succeeded("t" + i));
+      }
+    }
+    assertEquals(1 + transactions * 3 / 4, count(Database.USERS, "users"));
+  }
+
+  @Test
+  public void failedTransactionLeavesNoWrites() throws Exception {
+    Transaction transaction = Transaction.newBuilder().setId("t")
+        .addAllOperations(addUser("t", 2).getOperationsList())
+        .addAllOperations(addUser("t", 2).getOperationsList())
+        .build();
+    ReplyRecorder replies = new ReplyRecorder(1);
+    transactionManager.addTransaction(transaction, replies.observer("t"));
+    assertTrue("Transaction did not finish", replies.await(10));
+
+    assertFalse(replies.succeeded("t"));
+    assertEquals(0, count(Database.USERS, "users"));
+  }
+
+  @Test
+  public void readsItsOwnStagedWrites() throws Exception {
+    TransactionReply reply = run(Transaction.newBuilder().setId("t")
+        .addAllOperations(addUser("t", 3).getOperationsList())
+        .addOperations(Operation.newBuilder().setTable(Table.USERS).setType(OperationType.READ))
+        .build());
+
+    assertEquals(1, reply.getResults(0).getUsersCount());
+    assertEquals(3, reply.getResults(0).getUsers(0).getId());
+  }
+
+  /**
+   * A search that also writes users is not read-only, so it is served from the search cache rather than a snapshot.
+   */
+  @Test
+  public void committedFlightInvalidatesTheCachedSearch() throws Exception {
+    run(Transaction.newBuilder().setId("route")
+        .addOperations(Operation.newBuilder().setTable(Table.ROUTES).setType(OperationType.WRITE)
+            .setRoute(RouteRow.newBuilder().setId(1).setSource("Rome").setDestination("Paris")))
+        .build());
+    assertEquals(0, searchFlights("search1", "Paris", 1));
+    assertEquals(0, searchFlights("search2", "Paris", 2));
+    assertEquals(1, transactionManager.getFlightSearchCache().getHits());
+
+    run(Transaction.newBuilder().setId("flight")
+        .addOperations(Operation.newBuilder().setTable(Table.FLIGHTS).setType(OperationType.WRITE)
+            .setFlight(FlightRow.newBuilder().setRouteId(1).setDeparture(1000).setArrival(2000)))
+        .build());
+
+    assertEquals(1, searchFlights("search3", "Paris", 3));
+    assertEquals(2, transactionManager.getFlightSearchCache().getMisses());
+  }
+
+  private int searchFlights(String transactionId, String destination, int userId) throws InterruptedException {
+    TransactionReply reply = run(Transaction.newBuilder().setId(transactionId)
+        .addOperations(Operation.newBuilder().setTable(Table.FLIGHTS).setType(OperationType.READ)
+            .setSearch(Search.newBuilder().setDestination(destination)))
+        .addAllOperations(addUser(transactionId, userId).getOperationsList())
+        .build());
+    return reply.getResults(0).getFlightsCount();
+  }
+
+  private TransactionReply run(Transaction transaction) throws InterruptedException {
+    ReplyRecorder replies = new ReplyRecorder(1);
+    transactionManager.addTransaction(transaction, replies.observer(transaction.getId()));
+    assertTrue("Transaction did not finish", replies.await(10));
+    assertTrue(transaction.getId(), replies.succeeded(transaction.getId()));
+    return replies.reply(transaction.getId());
+  }
+
+  static Transaction addUser(String transactionId, int userId) {
+    return Transaction.newBuilder().setId(transactionId)
+        .addOperations(Operation.newBuilder().setTable(Table.USERS).setType(OperationType.WRITE)
+            .setUser(UserRow.newBuilder().setId(userId).setName("user" + userId).setAge(30)))
+        .build();
+  }
+
+  static int count(Database database, String table) throws SQLException {
+    try (Connection connection = DriverManager.getConnection(database.getUrl());
+         Statement statement = connection.createStatement();
+         ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+      return rs.next() ? rs.getInt(1) : 0;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package transactionmanager;
+
+import data.Database;
+import data.OperationException;
+import data.PooledConnection;
+import data.TemporaryDatabases;
+import data.airlines.AirlinesManager;
+import data.airlines.Route;
+import data.users.User;
+import data.users.UsersManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import server.Operation;
+import server.OperationType;
+import server.RouteRow;
+import server.Table;
+import server.Transaction;
+import server.UserRow;
+
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TwoPhaseCommitCoordinatorTest {
+
+  private TemporaryDatabases databases;
+  private WriteAheadLog log;
+  private Map<Database, GroupCommitter> committers = new EnumMap<>(Database.class);
+  private TwoPhaseCommitCoordinator coordinator;
+
+  @Before
+  public void setUp() throws Exception {
+    databases = TemporaryDatabases.empty();
+    log = new WriteAheadLog(databases.getDirectory().resolve("wal.log"));
+    for (Database database : new Database[]{Database.AIRLINES, Database.USERS}) {
+      GroupCommitter committer = new GroupCommitter(database, new PooledConnection(
+          DriverManager.getConnection(database.getUrl()), PooledConnection.STATEMENT_CACHE_SIZE), log,
+          TwoPhaseCommitCoordinatorTest::apply);
+      committer.start();
+      committers.put(database, committer);
+    }
+    coordinator = new TwoPhaseCommitCoordinator(committers, log);
+    coordinator.commit(transaction(user(1)));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for (GroupCommitter committer : committers.values()) {
+      committer.stop();
+    }
+    log.close();
+    databases.delete();
+  }
+
+  @Test
+  public void commitsEveryParticipantAfterTheDecision() throws Exception {
+    RunningTransaction transaction = transaction(route(7), user(2));
+    coordinator.commit(transaction);
+
+    assertEquals(1, TransactionManagerTest.count(Database.AIRLINES, "routes"));
+    assertEquals(2, TransactionManagerTest.count(Database.USERS, "users"));
+    assertEquals(1, coordinator.getDistributedCommits());
+    List<WriteAheadLog.Record> records = records(transaction);
+    assertEquals(3, records.size());
+    assertEquals(WriteAheadLog.RecordType.COMMIT, records.get(2).getType());
+  }
+
+  @Test
+  public void rollsBackEveryParticipantWhenOnePrepareFails() throws Exception {
+    RunningTransaction transaction = transaction(route(7), user(1));
+    try {
+      coordinator.commit(transaction);
+      fail("Duplicate user committed");
+    } catch (OperationException e) {
+      // expected
+    }
+
+    assertEquals(0, TransactionManagerTest.count(Database.AIRLINES, "routes"));
+    assertEquals(1, TransactionManagerTest.count(Database.USERS, "users"));
+    assertEquals(0, coordinator.getDistributedCommits());
+    // The prepared route is compensated, so recovery does not undo it
+    assertEquals(
+        Arrays.asList(WriteAheadLog.RecordType.OPERATION, WriteAheadLog.RecordType.COMPENSATION),
+        records(transaction).stream().map(WriteAheadLog.Record::getType).collect(Collectors.toList()));
+  }
+
+  @Test
+  public void concurrentDistributedCommitsAllFinish() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<List<Operation>>> commits = new ArrayList<>();
+      for (int i = 0; i < 40; i++) {
+        RunningTransaction transaction = transaction(route(100 + i), user(100 + i));
+        commits.add(executor.submit(() -> coordinator.commit(transaction)));
+      }
+      for (Future<List<Operation>> commit : commits) {
+        assertEquals(2, commit.get(30, TimeUnit.SECONDS).size());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(40, TransactionManagerTest.count(Database.AIRLINES, "routes"));
+    assertEquals(40, coordinator.getDistributedCommits());
+  }
+
+  private List<WriteAheadLog.Record> records(RunningTransaction transaction) throws Exception {
+    log.force(log.getLastLsn());
+    return log.readAll().stream()
+        .filter(record -> record.getTransactionId().equals(transaction.getGlobalId()))
+        .collect(Collectors.toList());
+  }
+
+  private static RunningTransaction transaction(Operation... operations) {
+    RunningTransaction transaction = new RunningTransaction(Transaction.newBuilder().setId("t").build());
+    for (Operation operation : operations) {
+      transaction.addWrite(operation.getTable() == Table.ROUTES ? Database.AIRLINES : Database.USERS, operation);
+    }
+    return transaction;
+  }
+
+  private static Operation route(int id) {
+    return Operation.newBuilder().setTable(Table.ROUTES).setType(OperationType.WRITE)
+        .setRoute(RouteRow.newBuilder().setId(id).setSource("A").setDestination("B")).build();
+  }
+
+  private static Operation user(int id) {
+    return Operation.newBuilder().setTable(Table.USERS).setType(OperationType.WRITE)
+        .setUser(UserRow.newBuilder().setId(id).setName("user" + id).setAge(30)).build();
+  }
+
+  private static Operation apply(PooledConnection connection, Operation operation) throws OperationException {
+    if (operation.getTable() == Table.ROUTES) {
+      RouteRow row = operation.getRoute();
+      new AirlinesManager(connection).addRoute(new Route(row.getId(), row.getSource(), row.getDestination()));
+    } else {
+      UserRow row = operation.getUser();
+      new UsersManager(connection).addUser(new User(row.getId(), row.getName(), row.getAge()));
+    }
+    return operation.toBuilder().setType(OperationType.DELETE).build();
+  }
+}
@@ -0,0 +1,100 @@
+package transactionmanager;
+
+import data.Database;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import server.Operation;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WriteAheadLogTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path path;
+  private WriteAheadLog log;
+
+  @Before
+  public void setUp() throws Exception {
+    path = folder.getRoot().toPath().resolve("wal.log");
+    log = new WriteAheadLog(path, 1);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    log.close();
+  }
+
+  @Test
+  public void truncatesOnceEveryDatabaseCheckpointed() throws Exception {
+    Operation operation = TransactionManagerTest.addUser("t", 1).getOperations(0);
+    log.appendOperation("a", Database.USERS, operation, operation);
+    long lsn = log.appendOperation("b", Database.AIRLINES, operation, operation);
+    log.force(lsn);
+
+    log.checkpointed(Database.USERS, lsn);
+    assertTrue(Files.size(path) > 0);
+    assertEquals(2, log.readAll().size());
+
+    log.checkpointed(Database.AIRLINES, lsn);
+    assertEquals(0, Files.size(path));
+    assertEquals(0, log.getSize());
+    assertEquals(lsn, log.getLastLsn());
+    assertEquals(lsn + 1, log.appendCommit("c"));
+  }
+
+  @Test
+  public void keepsRecordsNotCommittedToTheirDatabase() throws Exception {
+    Operation operation = TransactionManagerTest.addUser("t", 1).getOperations(0);
+    long checkpointed = log.appendOperation("a", Database.USERS, operation, operation);
+    long lsn = log.appendOperation("b", Database.USERS, operation, operation);
+    log.force(lsn);
+
+    log.checkpointed(Database.USERS, checkpointed);
+    assertEquals(2, log.readAll().size());
+  }
+
+  @Test
+  public void garbageLengthEndsTheScan() throws Exception {
+    Operation operation = TransactionManagerTest.addUser("t", 1).getOperations(0);
+    log.force(log.appendOperation("a", Database.USERS, operation, null));
+    log.close();
+
+    for (int length : new int[] {-1, Integer.MAX_VALUE}) {
+      Path torn = folder.getRoot().toPath().resolve("torn" + length + ".log");
+      ByteBuffer header = ByteBuffer.allocate(12).putInt(length).putLong(0);
+      Files.write(torn, Files.readAllBytes(path));
+      Files.write(torn, header.array(), StandardOpenOption.APPEND);
+
+      log = new WriteAheadLog(torn, 1);
+      assertEquals(1, log.readAll().size());
+      log.close();
+    }
+    log = new WriteAheadLog(path, 1);
+  }
+
+  @Test
+  public void readsRecordsBackAfterReopening() throws Exception {
+    Operation operation = TransactionManagerTest.addUser("t", 1).getOperations(0);
+    log.appendOperation("a", Database.USERS, operation, null);
+    log.appendCompensation("a", Database.USERS, operation);
+    log.appendCommit("b");
+    log.close();
+
+    log = new WriteAheadLog(path, 1);
+    assertEquals(3, log.readAll().size());
+    assertEquals(WriteAheadLog.RecordType.OPERATION, log.readAll().get(0).getType());
+    assertEquals(operation, log.readAll().get(0).getOperation());
+    assertEquals(WriteAheadLog.RecordType.COMMIT, log.readAll().get(2).getType());
+  }
+}